@@ -0,0 +1,177 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.eclipse.swt.custom.StyledTextContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures editing and querying the text pane of a
+ * {@link TextBrailleContent}, with lines translated by a
+ * {@link FakeTranslator}.  Each editing benchmark undoes its own edit,
+ * so the document keeps the same size across invocations.
+ * <code>charNanos</code> is the latency the translator adds per
+ * character, to simulate a slow table.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextBrailleContentBenchmark
+{
+	private static final String LINE_DELIMITER = System.getProperty("line.separator");
+
+	//   lines pasted or deleted at once
+	private static final int RANGE_LINES = 20;
+
+	//   offsets and lines queried, in a fixed random order
+	private static final int QUERIES = 0x400;
+
+	@Param({"1000", "10000", "100000"})
+	public int lineCount;
+
+	@Param({"0", "100"})
+	public long charNanos;
+
+	private StyledTextContent content;
+	private int middleOffset, tailOffset;
+	private String paste, deleted;
+	private int deleteOffset;
+	private int offsets[], lines[];
+	private int query;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(lineCount);
+		StringBuilder text = new StringBuilder(lineCount * 48);
+		for(int i = 0; i < lineCount; i++)
+		{
+			appendLine(text, random);
+			if(i < lineCount - 1)
+				text.append(LINE_DELIMITER);
+		}
+
+		StringBuilder lines = new StringBuilder(RANGE_LINES * 48);
+		for(int i = 0; i < RANGE_LINES; i++)
+		{
+			appendLine(lines, random);
+			lines.append(LINE_DELIMITER);
+		}
+		paste = lines.toString();
+
+		content = new TextBrailleContent(new FakeTranslator(0, charNanos)).getTextContent();
+		content.setText(text.toString());
+
+		middleOffset = content.getOffsetAtLine(lineCount / 2);
+		tailOffset = content.getOffsetAtLine(lineCount - 1);
+
+		deleteOffset = content.getOffsetAtLine(lineCount / 3);
+		deleted = content.getTextRange(deleteOffset, content.getOffsetAtLine(lineCount / 3 + RANGE_LINES) - deleteOffset);
+
+		this.offsets = new int[QUERIES];
+		this.lines = new int[QUERIES];
+		for(int i = 0; i < QUERIES; i++)
+		{
+			this.offsets[i] = random.nextInt(content.getCharCount());
+			this.lines[i] = random.nextInt(lineCount);
+		}
+	}
+
+	private static void appendLine(StringBuilder text, Random random)
+	{
+		int words = 4 + random.nextInt(8);
+		for(int i = 0; i < words; i++)
+		{
+			if(i > 0)
+				text.append(' ');
+			int length = 1 + random.nextInt(7);
+			for(int j = 0; j < length; j++)
+				text.append((char)('a' + random.nextInt(26)));
+		}
+	}
+
+	private void typeCharacter(int offset)
+	{
+		content.replaceTextRange(offset, 0, "x");
+		content.replaceTextRange(offset, 1, "");
+	}
+
+	@Benchmark
+	public void typeCharacterHead()
+	{
+		typeCharacter(0);
+	}
+
+	@Benchmark
+	public void typeCharacterMiddle()
+	{
+		typeCharacter(middleOffset);
+	}
+
+	@Benchmark
+	public void typeCharacterTail()
+	{
+		typeCharacter(tailOffset);
+	}
+
+	@Benchmark
+	public void pasteLines()
+	{
+		content.replaceTextRange(middleOffset, 0, paste);
+		content.replaceTextRange(middleOffset, paste.length(), "");
+	}
+
+	@Benchmark
+	public void deleteLines()
+	{
+		content.replaceTextRange(deleteOffset, deleted.length(), "");
+		content.replaceTextRange(deleteOffset, 0, deleted);
+	}
+
+	@Benchmark
+	public int getLineAtOffset()
+	{
+		query = (query + 1) & (QUERIES - 1);
+		return content.getLineAtOffset(offsets[query]);
+	}
+
+	@Benchmark
+	public int getOffsetAtLine()
+	{
+		query = (query + 1) & (QUERIES - 1);
+		return content.getOffsetAtLine(lines[query]);
+	}
+
+	@Benchmark
+	public String getTextRange()
+	{
+		query = (query + 1) & (QUERIES - 1);
+		int offset = offsets[query];
+		return content.getTextRange(offset, Math.min(0x100, content.getCharCount() - offset));
+	}
+}
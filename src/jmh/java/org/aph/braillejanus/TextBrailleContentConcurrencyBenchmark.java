@@ -0,0 +1,168 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.eclipse.swt.custom.StyledTextContent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures one thread editing a {@link TextBrailleContent}, as the UI
+ * thread does, while other threads read {@link TextBrailleSnapshot}s of it,
+ * as exports and background jobs do.  Readers also check their snapshots,
+ * and fail the benchmark with an IllegalStateException if one is not
+ * consistent, but the test that the build runs is
+ * TextBrailleContentConcurrencyTest.
+ * </p>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TextBrailleContentConcurrencyBenchmark
+{
+	private static final String LINE_DELIMITER = System.getProperty("line.separator");
+
+	//   lines pasted at once
+	private static final int PASTE_LINES = 20;
+
+	@Param({"1000", "100000"})
+	public int lineCount;
+
+	private TextBrailleContent textBrailleContent;
+	private StyledTextContent content;
+	private String paste;
+	private int edit;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(lineCount);
+		StringBuilder text = new StringBuilder(lineCount * 48);
+		for(int i = 0; i < lineCount; i++)
+		{
+			appendLine(text, random);
+			if(i < lineCount - 1)
+				text.append(LINE_DELIMITER);
+		}
+
+		StringBuilder lines = new StringBuilder(PASTE_LINES * 48);
+		for(int i = 0; i < PASTE_LINES; i++)
+		{
+			appendLine(lines, random);
+			lines.append(LINE_DELIMITER);
+		}
+		paste = lines.toString();
+
+		textBrailleContent = new TextBrailleContent(new FakeTranslator());
+		content = textBrailleContent.getTextContent();
+		content.setText(text.toString());
+	}
+
+	private static void appendLine(StringBuilder text, Random random)
+	{
+		int words = 4 + random.nextInt(8);
+		for(int i = 0; i < words; i++)
+		{
+			if(i > 0)
+				text.append(' ');
+			int length = 1 + random.nextInt(7);
+			for(int j = 0; j < length; j++)
+				text.append((char)('a' + random.nextInt(26)));
+		}
+	}
+
+	/**
+	 * <p>
+	 * Types and deletes a character, or pastes and deletes lines, at
+	 * lines spread through the document.
+	 * </p>
+	 */
+	@Benchmark
+	@Group("typing")
+	@GroupThreads(1)
+	public void edit()
+	{
+		edit++;
+		int offset = content.getOffsetAtLine((int)((edit * 0x9e3779b1L & 0xffffffffL) % content.getLineCount()));
+		if((edit & 0xf) == 0)
+		{
+			content.replaceTextRange(offset, 0, paste);
+			content.replaceTextRange(offset, paste.length(), "");
+		}
+		else
+		{
+			content.replaceTextRange(offset, 0, "x");
+			content.replaceTextRange(offset, 1, "");
+		}
+	}
+
+	@Benchmark
+	@Group("typing")
+	@GroupThreads(3)
+	public int readOffsets(ReaderState reader)
+	{
+		TextBrailleSnapshot snapshot = textBrailleContent.snapshot();
+		int charCount = snapshot.getTextCharCount();
+		int lineCount = snapshot.getTextLineCount();
+		int lineIndex = reader.random.nextInt(lineCount);
+
+		int offset = snapshot.getTextOffsetAtLine(lineIndex);
+		int next = lineIndex < lineCount - 1 ? snapshot.getTextOffsetAtLine(lineIndex + 1) : charCount + LINE_DELIMITER.length();
+		int lineLength = snapshot.getTextLine(lineIndex).length();
+		if(next - offset != lineLength + LINE_DELIMITER.length())
+			throw new IllegalStateException("line " + lineIndex + " of length " + lineLength + " spans " + offset + " to " + next);
+		if(snapshot.getTextLineAtOffset(offset) != lineIndex || snapshot.getTextLineAtOffset(offset + lineLength) != lineIndex)
+			throw new IllegalStateException("offset " + offset + " not on line " + lineIndex);
+		if(snapshot.getTextOffsetAtLine(lineCount - 1) + snapshot.getTextLine(lineCount - 1).length() != charCount)
+			throw new IllegalStateException("lines do not add up to " + charCount + " chars");
+		return lineLength;
+	}
+
+	@Benchmark
+	@Group("typing")
+	@GroupThreads(1)
+	public int export()
+	{
+		TextBrailleSnapshot snapshot = textBrailleContent.snapshot();
+		if(snapshot.getTextLineCount() != snapshot.getBrailleLineCount())
+			throw new IllegalStateException(snapshot.getTextLineCount() + " text lines but " + snapshot.getBrailleLineCount() + " braille lines");
+		int charCount = snapshot.getBrailleCharCount();
+		String braille = snapshot.getBrailleRange(0, charCount);
+		if(braille.length() != charCount)
+			throw new IllegalStateException("exported " + braille.length() + " of " + charCount + " chars");
+		if(textBrailleContent.snapshot().getVersion() < snapshot.getVersion())
+			throw new IllegalStateException("version went back");
+		return braille.length();
+	}
+
+	@State(Scope.Thread)
+	public static class ReaderState
+	{
+		final Random random = new Random();
+	}
+}
@@ -0,0 +1,160 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.aph.liblouisaph.LibLouisAPH;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures translating a corpus line by line with LibLouisAPH, directly
+ * and without any cache.  The output buffer is the line length times
+ * <code>multiplier</code>, and at least 0x100, as in
+ * {@link LibLouisTranslator} with a multiplier of 5.  Backward benchmarks
+ * translate the forward translation of the corpus.
+ * </p><p>
+ * Each operation translates the whole corpus; the number of lines and
+ * chars of each corpus are printed during setup, to work out the cost per
+ * line and per char.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TranslationBenchmark
+{
+	private static final String LINE_DELIMITER = System.getProperty("line.separator");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Param({"prose", "table", "math", "paragraph"})
+	public String corpus;
+
+	@Param({"english-ueb-grade2.rst", "english-ueb-grade1.rst"})
+	public String table;
+
+	@Param({"forward", "backward"})
+	public String direction;
+
+	@Param({"2", "3", "5", "8"})
+	public int multiplier;
+
+	private boolean forward;
+	private String lines[];
+
+	@Setup
+	public void setup() throws IOException
+	{
+		loadLibrary();
+		forward = direction.equals("forward");
+		lines = readCorpus(corpus);
+		if(!forward)
+			lines = translateCorpus(lines, table);
+
+		int chars = 0;
+		for(String line : lines)
+			chars += line.length();
+		System.out.println(corpus + " " + direction + ":  " + lines.length + " lines, " + chars + " chars");
+	}
+
+	@Benchmark
+	public int translate()
+	{
+		int length = 0;
+		for(String line : lines)
+		{
+			int bufferLength = line.length() * multiplier;
+			if(bufferLength < 0x100)
+				bufferLength = 0x100;
+			String result;
+			if(forward)
+				result = LibLouisAPH.translateForward(line, bufferLength, table, null, null, null, null);
+			else
+				result = LibLouisAPH.translateBackward(line, bufferLength, table, null, null, null, null);
+			if(result != null)
+				length += result.length();
+		}
+		return length;
+	}
+
+	////////////////////////////////////////
+
+	private static boolean libraryLoaded;
+
+	static synchronized void loadLibrary() throws IOException
+	{
+		if(libraryLoaded)
+			return;
+		LibLouisAPH.loadLibraryInternal();
+		LibLouisAPH.setInternalTablePath();
+		libraryLoaded = true;
+	}
+
+	/**
+	 * <p>
+	 * Returns the lines of the corpus <code>name</code>, each ending with
+	 * a line delimiter as they do in the document.
+	 * </p>
+	 */
+	static String[] readCorpus(String name) throws IOException
+	{
+		InputStream inputStream = TranslationBenchmark.class.getResourceAsStream("corpora/" + name + ".txt");
+		if(inputStream == null)
+			throw new IOException("no corpus " + name);
+
+		ArrayList<String> lines = new ArrayList<>();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8)))
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+				lines.add(line + LINE_DELIMITER);
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * <p>
+	 * Returns the forward translation of each line, failing if the table
+	 * cannot be used.
+	 * </p>
+	 */
+	static String[] translateCorpus(String lines[], String table)
+	{
+		LibLouisTranslator translator = new LibLouisTranslator();
+		String results[] = new String[lines.length];
+		for(int i = 0; i < lines.length; i++)
+		{
+			results[i] = translator.translate(table, true, lines[i]);
+			if(results[i] == null)
+				throw new IllegalStateException("unable to translate with " + table);
+		}
+		return results;
+	}
+}
@@ -0,0 +1,100 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures whether LibLouisAPH translation scales across processors, by
+ * translating the same corpus from 1, 2 and 4 threads and from one thread
+ * per processor.  Throughput that does not grow with the thread count
+ * means the native library serializes translations.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TranslationScalingBenchmark
+{
+	@Param({"prose", "paragraph"})
+	public String corpus;
+
+	@Param({"english-ueb-grade2.rst"})
+	public String table;
+
+	private final LibLouisTranslator translator = new LibLouisTranslator();
+	private String lines[];
+
+	@Setup
+	public void setup() throws IOException
+	{
+		TranslationBenchmark.loadLibrary();
+		lines = TranslationBenchmark.readCorpus(corpus);
+		TranslationBenchmark.translateCorpus(lines, table);
+	}
+
+	private int translate()
+	{
+		int length = 0;
+		for(String line : lines)
+		{
+			String result = translator.translate(table, true, line);
+			if(result != null)
+				length += result.length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int threads1()
+	{
+		return translate();
+	}
+
+	@Benchmark
+	@Threads(2)
+	public int threads2()
+	{
+		return translate();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int threads4()
+	{
+		return translate();
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public int threadsMax()
+	{
+		return translate();
+	}
+}
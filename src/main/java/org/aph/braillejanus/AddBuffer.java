@@ -0,0 +1,94 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * Append-only storage for inserted text.  Text is copied into fixed size
+ * chunks that are never changed once written, so lines can refer to it
+ * without copying it again.  A chunk no line refers to any more is
+ * garbage collected.  Large text is kept as the String it came in.
+ * </p>
+ */
+final class AddBuffer
+{
+	private static final int CHUNK_SIZE = 0x4000;
+
+	//   text at least this long is not copied
+	private static final int LARGE_TEXT = 0x400;
+
+	private Chunk chunk = new Chunk(CHUNK_SIZE);
+
+	/**
+	 * <p>
+	 * Appends <code>text</code>, returning a line of one piece with the
+	 * same characters.
+	 * </p>
+	 */
+	CharSequence append(String text)
+	{
+		if(text.length() >= LARGE_TEXT)
+			return new PieceLine.Span(text, 0, text.length());
+
+		if(chunk.used + text.length() > chunk.chars.length)
+			chunk = new Chunk(CHUNK_SIZE);
+		int start = chunk.used;
+		text.getChars(0, text.length(), chunk.chars, start);
+		chunk.used += text.length();
+		return new PieceLine.Span(chunk, start, chunk.used);
+	}
+
+	/**
+	 * <p>
+	 * Characters of the add buffer.  Only the characters before
+	 * <code>used</code> have been written, and only those are referred to.
+	 * </p>
+	 */
+	static final class Chunk implements CharSequence
+	{
+		final char chars[];
+		int used;
+
+		private Chunk(int size)
+		{
+			chars = new char[size];
+		}
+
+		@Override
+		public int length()
+		{
+			return used;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			return chars[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end)
+		{
+			return new String(chars, start, end - start);
+		}
+
+		@Override
+		public String toString()
+		{
+			return new String(chars, 0, used);
+		}
+	}
+}
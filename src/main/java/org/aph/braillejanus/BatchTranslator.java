@@ -0,0 +1,227 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.aph.liblouisaph.LibLouisAPH;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * <p>
+ * Translates files from the command line without a display.  Input is
+ * read a batch of lines at a time, each batch is translated with a
+ * {@link BulkTranslator}, and the result is written before the next batch
+ * is read, so memory use does not grow with the size of the input.
+ * </p><p>
+ * Input that is not valid UTF-8 is decoded with replacement characters.
+ * When translating a directory, a file that fails is reported and the
+ * rest are still translated.
+ * </p>
+ */
+public final class BatchTranslator
+{
+	private static final String LINE_DELIMITER = System.getProperty("line.separator");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final int DEFAULT_BATCH_LINES = 0x400;
+
+	private final LineTranslator lineTranslator;
+	private final boolean forward;
+	private final int batchLines;
+
+	BatchTranslator(LineTranslator lineTranslator, boolean forward, int batchLines)
+	{
+		this.lineTranslator = lineTranslator;
+		this.forward = forward;
+		this.batchLines = batchLines;
+	}
+
+	public static void main(String args[])
+	{
+		boolean forward = true;
+		String table = LineTranslator.DEFAULT_TABLE;
+		int batchLines = DEFAULT_BATCH_LINES;
+
+		int i;
+		for(i = 0; i < args.length && args[i].startsWith("-"); i++)
+			switch(args[i])
+			{
+			case "-backward":  forward = false;  break;
+			case "-table":
+
+				if(++i < args.length)
+					table = args[i];
+				break;
+
+			case "-lines":
+
+				try
+				{
+					if(++i < args.length)
+						batchLines = Integer.parseInt(args[i]);
+				}
+				catch(NumberFormatException ignored)
+				{
+					batchLines = 0;
+				}
+				break;
+
+			default:
+
+				usage();
+				return;
+			}
+		if(args.length - i != 2 || batchLines < 1)
+		{
+			usage();
+			return;
+		}
+
+		try
+		{
+			LibLouisAPH.loadLibraryInternal();
+			LibLouisAPH.setInternalTablePath();
+		}
+		catch(IOException exception)
+		{
+			Log.message(Log.LOG_FATAL, exception, false);
+			System.exit(1);
+		}
+
+		BatchTranslator batchTranslator = new BatchTranslator(new LineTranslator(table, new TranslationCache()), forward, batchLines);
+		try
+		{
+			int failed = batchTranslator.translate(Paths.get(args[i]), Paths.get(args[i + 1]));
+			Metrics.log();
+			if(failed > 0)
+			{
+				Log.message(Log.LOG_ERROR, failed + " files not translated", false);
+				System.exit(1);
+			}
+		}
+		catch(IOException exception)
+		{
+			Log.message(Log.LOG_FATAL, exception, false);
+			System.exit(1);
+		}
+	}
+
+	private static void usage()
+	{
+		System.err.println("usage:  BatchTranslator [-backward] [-table TABLE] [-lines BATCH] INPUT OUTPUT");
+		System.err.println("  INPUT and OUTPUT are both files or both directories.");
+		System.exit(2);
+	}
+
+	/**
+	 * <p>
+	 * Translates the file <code>input</code> into <code>output</code>, or
+	 * every file in the directory <code>input</code> into files of the same
+	 * name in the directory <code>output</code>.  Returns the number of
+	 * files in the directory that could not be translated.
+	 * </p>
+	 */
+	int translate(Path input, Path output) throws IOException
+	{
+		if(!Files.isDirectory(input))
+		{
+			translateFile(input, output);
+			return 0;
+		}
+
+		int failed = 0;
+		Files.createDirectories(output);
+		try(DirectoryStream<Path> directoryStream = Files.newDirectoryStream(input))
+		{
+			for(Path path : directoryStream)
+				if(Files.isRegularFile(path))
+					try
+					{
+						translateFile(path, output.resolve(path.getFileName().toString()));
+					}
+					catch(IOException exception)
+					{
+						Log.message(Log.LOG_ERROR, "unable to translate " + path + ":  " + exception.getMessage(), false);
+						failed++;
+					}
+		}
+		return failed;
+	}
+
+	void translateFile(Path input, Path output) throws IOException
+	{
+		long time = System.currentTimeMillis();
+		long lineCount = 0;
+		String lines[] = new String[batchLines];
+		boolean endsWithLineBreak = endsWithLineBreak(input);
+		CharsetDecoder decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(input), decoder));
+		    BufferedWriter writer = Files.newBufferedWriter(output, UTF_8))
+		{
+			int count = 0;
+			String line = reader.readLine();
+			while(line != null)
+			{
+				//   last line only gets a delimiter if the input has one
+				String next = reader.readLine();
+				if(next != null || endsWithLineBreak)
+					line += LINE_DELIMITER;
+				lines[count++] = line;
+				line = next;
+				if(count == lines.length)
+				{
+					writer.write(BulkTranslator.translate(lineTranslator, lines, forward));
+					lineCount += count;
+					count = 0;
+				}
+			}
+			if(count > 0)
+			{
+				String remaining[] = new String[count];
+				System.arraycopy(lines, 0, remaining, 0, count);
+				writer.write(BulkTranslator.translate(lineTranslator, remaining, forward));
+				lineCount += count;
+			}
+		}
+
+		Log.format(Log.LOG_INFO, "Translated %d lines of %s in %d ms", lineCount, input, System.currentTimeMillis() - time);
+	}
+
+	private static boolean endsWithLineBreak(Path path) throws IOException
+	{
+		try(SeekableByteChannel channel = Files.newByteChannel(path))
+		{
+			if(channel.size() < 1)
+				return false;
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.position(channel.size() - 1);
+			channel.read(last);
+			return last.get(0) == '\n' || last.get(0) == '\r';
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * A line of braille cells stored one byte per cell, the dots of the cell
+ * as in the Unicode braille patterns block, with an optional trailing line
+ * delimiter.  Characters are decoded to Unicode when read.
+ * </p>
+ */
+final class BrailleLine implements CharSequence
+{
+	static final char BRAILLE_BASE = '\u2800';
+
+	private static final byte NO_CELLS[] = new byte[0];
+
+	private final byte cells[];
+	private final String delimiter;
+
+	private BrailleLine(byte cells[], String delimiter)
+	{
+		this.cells = cells;
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * <p>
+	 * Returns <code>text</code> as a line of cells, or <code>null</code> if
+	 * it contains anything other than braille cells followed by an optional
+	 * <code>lineDelimiter</code>.
+	 * </p>
+	 */
+	static BrailleLine valueOf(CharSequence text, String lineDelimiter)
+	{
+		int length = text.length();
+		int count = 0;
+		while(count < length && (text.charAt(count) & 0xff00) == BRAILLE_BASE)
+			count++;
+
+		String delimiter = "";
+		if(count < length)
+		{
+			if(length - count != lineDelimiter.length() || !lineDelimiter.contentEquals(text.subSequence(count, length)))
+				return null;
+			delimiter = lineDelimiter;
+		}
+
+		byte cells[] = count == 0 ? NO_CELLS : new byte[count];
+		for(int i = 0; i < count; i++)
+			cells[i] = (byte)text.charAt(i);
+		return new BrailleLine(cells, delimiter);
+	}
+
+	@Override
+	public int length()
+	{
+		return cells.length + delimiter.length();
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if(index < cells.length)
+			return (char)(BRAILLE_BASE | cells[index] & 0xff);
+		return delimiter.charAt(index - cells.length);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		if(start < 0 || end > length() || start > end)
+			throw new StringIndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+
+		char chars[] = new char[end - start];
+		int finish = Math.min(end, cells.length);
+		for(int i = start; i < finish; i++)
+			chars[i - start] = (char)(BRAILLE_BASE | cells[i] & 0xff);
+		for(int i = Math.max(start, cells.length); i < end; i++)
+			chars[i - start] = delimiter.charAt(i - cells.length);
+		return new String(chars);
+	}
+
+	@Override
+	public String toString()
+	{
+		return (String)subSequence(0, length());
+	}
+}
@@ -0,0 +1,94 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Translates many lines at once by splitting them across a fork/join
+ * pool, then joining the results in order.  Fewer than MIN_LINES lines are
+ * translated on the calling thread.
+ * </p><p>
+ * Used by {@link BatchTranslator}, {@link TranslationServer}, and by
+ * {@link TextBrailleContent} only when it has no
+ * {@link TranslationExecutor}.  The editor always installs one, so its
+ * large updates are translated by the executor instead.
+ * </p>
+ */
+final class BulkTranslator
+{
+	static final int MIN_LINES = 256;
+
+	//   lines translated by a single task
+	private static final int CHUNK_LINES = 64;
+
+	private static ForkJoinPool forkJoinPool;
+
+	private BulkTranslator(){}
+
+	private static synchronized ForkJoinPool getForkJoinPool()
+	{
+		if(forkJoinPool == null)
+			forkJoinPool = new ForkJoinPool();
+		return forkJoinPool;
+	}
+
+	static String translate(LineTranslator lineTranslator, String lines[], boolean forward)
+	{
+		if(lines.length < MIN_LINES)
+			return new TranslateTask(lineTranslator, lines, forward, 0, lines.length).compute().toString();
+		return getForkJoinPool().invoke(new TranslateTask(lineTranslator, lines, forward, 0, lines.length)).toString();
+	}
+
+	//   never serialized, it holds a LineTranslator
+	@SuppressWarnings("serial")
+	private static final class TranslateTask extends RecursiveTask<StringBuilder>
+	{
+		private final LineTranslator lineTranslator;
+		private final String lines[];
+		private final boolean forward;
+		private final int start, finish;
+
+		TranslateTask(LineTranslator lineTranslator, String lines[], boolean forward, int start, int finish)
+		{
+			this.lineTranslator = lineTranslator;
+			this.lines = lines;
+			this.forward = forward;
+			this.start = start;
+			this.finish = finish;
+		}
+
+		@Override
+		protected StringBuilder compute()
+		{
+			if(finish - start <= CHUNK_LINES)
+			{
+				StringBuilder result = new StringBuilder((finish - start) * 0x40);
+				for(int i = start; i < finish; i++)
+					result.append(lineTranslator.translateLine(lines[i], forward));
+				return result;
+			}
+
+			int middle = (start + finish) >>> 1;
+			TranslateTask first = new TranslateTask(lineTranslator, lines, forward, start, middle);
+			TranslateTask second = new TranslateTask(lineTranslator, lines, forward, middle, finish);
+			second.fork();
+			return first.compute().append(second.join());
+		}
+	}
+}
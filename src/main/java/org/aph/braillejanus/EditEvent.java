@@ -0,0 +1,54 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * <p>
+ * Flight recorder event for a change to the text or braille of a
+ * {@link TextBrailleContent}, including notifying its listeners.  Inside
+ * a <code>beginEdit</code>/<code>commitEdit</code> transaction the
+ * listeners are notified later, by <code>commitEdit</code>, so the event
+ * covers only the change itself.
+ * </p>
+ */
+@Name("org.aph.braillejanus.Edit")
+@Label("Edit")
+@Category("BrailleJanus")
+@Description("Replacement of a range of text or braille")
+final class EditEvent extends Event
+{
+	@Label("Pane")
+	String pane;
+
+	@Label("Offset")
+	int offset;
+
+	@Label("Replaced Length")
+	int replacedLength;
+
+	@Label("Inserted Length")
+	int insertedLength;
+
+	@Label("Line Delta")
+	@Description("Lines added, or removed if negative")
+	int lineDelta;
+}
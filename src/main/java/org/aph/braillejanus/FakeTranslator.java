@@ -0,0 +1,103 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * Translates without the native library, by mapping each letter, digit and
+ * common punctuation mark to a single braille cell and back, and spaces to
+ * blank cells.  Other characters are left as they are.  The result does
+ * not depend on the table, only on the text.
+ * </p><p>
+ * An artificial latency, per call and per character, can be set to
+ * simulate slow tables.  The latency is spent busy waiting, as a native
+ * translation would spend it, so it competes for processors.
+ * </p>
+ */
+final class FakeTranslator implements Translator
+{
+	//   print characters and the dots of their cells, 0x01 is dot 1 through 0x80 dot 8
+	private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyz1234567890,;:.!?'-";
+	private static final int DOTS[] =
+	{
+		0x01, 0x03, 0x09, 0x19, 0x11, 0x0b, 0x1b, 0x13, 0x0a, 0x1a,
+		0x05, 0x07, 0x0d, 0x1d, 0x15, 0x0f, 0x1f, 0x17, 0x0e, 0x1e,
+		0x25, 0x27, 0x3a, 0x2d, 0x3d, 0x35,
+		0x01, 0x03, 0x09, 0x19, 0x11, 0x0b, 0x1b, 0x13, 0x0a, 0x1a,
+		0x02, 0x06, 0x12, 0x32, 0x16, 0x26, 0x04, 0x24,
+	};
+
+	private static final char BRAILLE_BASE = '\u2800';
+
+	private static final char FORWARD[] = new char[0x80];
+	private static final char BACKWARD[] = new char[0x100];
+
+	static
+	{
+		//   letters come first, so cells shared with digits translate back to letters
+		for(int i = CHARACTERS.length() - 1; i >= 0; i--)
+		{
+			char c = CHARACTERS.charAt(i);
+			FORWARD[c] = (char)(BRAILLE_BASE + DOTS[i]);
+			if(c >= 'a' && c <= 'z')
+				FORWARD[c - 'a' + 'A'] = FORWARD[c];
+			BACKWARD[DOTS[i]] = c;
+		}
+		FORWARD[' '] = BRAILLE_BASE;
+		BACKWARD[0] = ' ';
+	}
+
+	private final long callNanos, charNanos;
+
+	FakeTranslator()
+	{
+		this(0, 0);
+	}
+
+	FakeTranslator(long callNanos, long charNanos)
+	{
+		this.callNanos = callNanos;
+		this.charNanos = charNanos;
+	}
+
+	@Override
+	public String translate(String table, boolean forward, String text)
+	{
+		StringBuilder result = new StringBuilder(text.length());
+		for(int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if(forward)
+			{
+				if(c < FORWARD.length && FORWARD[c] != 0)
+					c = FORWARD[c];
+			}
+			else if(c >= BRAILLE_BASE && c < BRAILLE_BASE + BACKWARD.length && BACKWARD[c - BRAILLE_BASE] != 0)
+				c = BACKWARD[c - BRAILLE_BASE];
+			result.append(c);
+		}
+
+		long latency = callNanos + charNanos * text.length();
+		if(latency > 0)
+		{
+			long start = System.nanoTime();
+			while(System.nanoTime() - start < latency)
+				Thread.yield();
+		}
+
+		return result.toString();
+	}
+}
@@ -0,0 +1,147 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * Records the flight recorder events, if the runtime has
+ * <code>jdk.jfr</code>.  Not every Java 8 runtime does, so the event
+ * classes are only referenced from the nested Events class, which is only
+ * loaded when it is present.  Otherwise the begin methods return
+ * <code>null</code> and the commit methods do nothing.
+ * </p>
+ */
+final class FlightRecorder
+{
+	static final boolean AVAILABLE = isAvailable();
+
+	private FlightRecorder(){}
+
+	private static boolean isAvailable()
+	{
+		try
+		{
+			Class.forName("jdk.jfr.Event");
+			return true;
+		}
+		catch(ClassNotFoundException | LinkageError ignored)
+		{
+			return false;
+		}
+	}
+
+	static Object beginEdit()
+	{
+		if(!AVAILABLE)
+			return null;
+		return Events.beginEdit();
+	}
+
+	static void commitEdit(Object event, String pane, int offset, int replacedLength, int insertedLength, int lineDelta)
+	{
+		if(event != null)
+			Events.commitEdit(event, pane, offset, replacedLength, insertedLength, lineDelta);
+	}
+
+	static Object beginLineTranslation()
+	{
+		if(!AVAILABLE)
+			return null;
+		return Events.beginLineTranslation();
+	}
+
+	static void commitLineTranslation(Object event, String table, boolean forward, int inputLength, boolean translated)
+	{
+		if(event != null)
+			Events.commitLineTranslation(event, table, forward, inputLength, translated);
+	}
+
+	static Object beginListener()
+	{
+		if(!AVAILABLE)
+			return null;
+		return Events.beginListener();
+	}
+
+	static void commitListener(Object event, String pane, boolean changed, int listenerCount)
+	{
+		if(event != null)
+			Events.commitListener(event, pane, changed, listenerCount);
+	}
+
+	private static final class Events
+	{
+		static Object beginEdit()
+		{
+			EditEvent event = new EditEvent();
+			event.begin();
+			return event;
+		}
+
+		static void commitEdit(Object object, String pane, int offset, int replacedLength, int insertedLength, int lineDelta)
+		{
+			EditEvent event = (EditEvent)object;
+			event.end();
+			if(!event.shouldCommit())
+				return;
+			event.pane = pane;
+			event.offset = offset;
+			event.replacedLength = replacedLength;
+			event.insertedLength = insertedLength;
+			event.lineDelta = lineDelta;
+			event.commit();
+		}
+
+		static Object beginLineTranslation()
+		{
+			LineTranslationEvent event = new LineTranslationEvent();
+			event.begin();
+			return event;
+		}
+
+		static void commitLineTranslation(Object object, String table, boolean forward, int inputLength, boolean translated)
+		{
+			LineTranslationEvent event = (LineTranslationEvent)object;
+			event.end();
+			if(!event.shouldCommit())
+				return;
+			event.table = table;
+			event.forward = forward;
+			event.inputLength = inputLength;
+			event.translated = translated;
+			event.commit();
+		}
+
+		static Object beginListener()
+		{
+			ListenerEvent event = new ListenerEvent();
+			event.begin();
+			return event;
+		}
+
+		static void commitListener(Object object, String pane, boolean changed, int listenerCount)
+		{
+			ListenerEvent event = (ListenerEvent)object;
+			event.end();
+			if(!event.shouldCommit())
+				return;
+			event.pane = pane;
+			event.changed = changed;
+			event.listenerCount = listenerCount;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.eclipse.swt.widgets.Display;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Loads the braille fonts packaged in the jar, each only when first
+ * needed.  Fonts are extracted into a cache directory for the current
+ * version and reused by later launches, as long as their checksum still
+ * matches the packaged font.
+ * </p>
+ */
+final class FontLoader
+{
+	private final Display display;
+	private final File directory;
+	private final Set<String> loaded = new HashSet<>();
+
+	FontLoader(Display display, String version)
+	{
+		this.display = display;
+		directory = new File(System.getProperty("java.io.tmpdir") + File.separator + "BrailleJanus-" + version + File.separator + "fonts");
+	}
+
+	/**
+	 * <p>
+	 * Makes the font <code>fontName</code> available to the display, if it
+	 * is not already.  Returns <code>false</code> if it could not be loaded.
+	 * </p>
+	 */
+	boolean load(String fontName)
+	{
+		if(loaded.contains(fontName))
+			return true;
+
+		String fontFileName = fontName + ".otf";
+		URL url = getClass().getResource("/fonts/" + fontFileName);
+		if(url == null)
+		{
+			Log.message(Log.LOG_WARNING, "Unable to open font resource:  " + fontFileName, false);
+			return false;
+		}
+
+		try
+		{
+			File fontFile = new File(directory, fontFileName);
+			long checksum = getChecksum(url);
+			if(!fontFile.exists() || getChecksum(fontFile) != checksum)
+			{
+				Files.createDirectories(directory.toPath());
+				File tempFile = File.createTempFile(fontName, ".tmp", directory);
+				try(InputStream fontInputStream = url.openStream())
+				{
+					Files.copy(fontInputStream, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				//   other instances may be extracting the same font
+				Files.move(tempFile.toPath(), fontFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			if(!display.loadFont(fontFile.getPath()))
+			{
+				Log.message(Log.LOG_WARNING, "Unable to load font:  " + fontFile.getPath(), false);
+				return false;
+			}
+		}
+		catch(IOException exception)
+		{
+			Log.message(Log.LOG_ERROR, exception, false);
+			return false;
+		}
+
+		loaded.add(fontName);
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Returns the CRC-32 of a packaged font, from the jar entry if it is in
+	 * a jar, so it does not need to be read.
+	 * </p>
+	 */
+	private static long getChecksum(URL url) throws IOException
+	{
+		URLConnection connection = url.openConnection();
+		if(connection instanceof JarURLConnection)
+		{
+			long checksum = ((JarURLConnection)connection).getJarEntry().getCrc();
+			if(checksum >= 0)
+				return checksum;
+		}
+		try(InputStream inputStream = connection.getInputStream())
+		{
+			return getChecksum(inputStream);
+		}
+	}
+
+	private static long getChecksum(File file) throws IOException
+	{
+		try(InputStream inputStream = Files.newInputStream(file.toPath()))
+		{
+			return getChecksum(inputStream);
+		}
+	}
+
+	private static long getChecksum(InputStream inputStream) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		byte buffer[] = new byte[0x2000];
+		int length;
+		while((length = inputStream.read(buffer)) > 0)
+			crc.update(buffer, 0, length);
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,107 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Counts values, such as latencies in nanoseconds, in buckets by powers of
+ * two.  Recording is lock free and cheap enough for every edit; the
+ * percentiles it reports are the upper bounds of their buckets, so are
+ * accurate to within a factor of two.
+ * </p>
+ */
+final class Histogram
+{
+	//   bucket i holds values from 2^(i-1) to 2^i - 1, bucket 0 holds 0
+	private final AtomicLongArray buckets = new AtomicLongArray(65);
+	private final AtomicLong count = new AtomicLong(), total = new AtomicLong(), max = new AtomicLong();
+
+	void record(long value)
+	{
+		if(value < 0)
+			value = 0;
+		buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long previous = max.get();
+		while(value > previous && !max.compareAndSet(previous, value))
+			previous = max.get();
+	}
+
+	long getCount()
+	{
+		return count.get();
+	}
+
+	long getTotal()
+	{
+		return total.get();
+	}
+
+	long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * <p>
+	 * Returns the value that <code>percentile</code> percent of the
+	 * recorded values are at or below, at most the largest value recorded.
+	 * </p>
+	 */
+	long getPercentile(double percentile)
+	{
+		long counts[] = new long[buckets.length()];
+		long total = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if(total == 0)
+			return 0;
+
+		long rank = (long)Math.ceil(total * percentile / 100);
+		if(rank < 1)
+			rank = 1;
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if(seen >= rank)
+			{
+				long bound = i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+				return Math.min(bound, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * <p>
+	 * Returns the count, 50th and 99th percentiles, and maximum, with values
+	 * divided by <code>divisor</code>.
+	 * </p>
+	 */
+	String toString(long divisor)
+	{
+		return "count " + getCount() + ", p50 " + getPercentile(50) / divisor + ", p99 " + getPercentile(99) / divisor + ", max " + getMax() / divisor;
+	}
+}
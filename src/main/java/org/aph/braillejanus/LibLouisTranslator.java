@@ -0,0 +1,47 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.aph.liblouisaph.LibLouisAPH;
+
+/**
+ * <p>
+ * Translates with the LibLouisAPH native library, which must already be
+ * loaded.
+ * </p>
+ */
+public final class LibLouisTranslator implements Translator
+{
+	@Override
+	public String translate(String table, boolean forward, String text)
+	{
+		long time = System.nanoTime();
+		int length = text.length() * 5;
+		if(length < 0x100)
+			length = 0x100;
+		String result;
+		if(forward)
+			result = LibLouisAPH.translateForward(text, length, table, null, null, null, null);
+		else
+			result = LibLouisAPH.translateBackward(text, length, table, null, null, null, null);
+
+		Metrics.NATIVE_TRANSLATE.record(System.nanoTime() - time);
+		Metrics.NATIVE_CHARS_IN.addAndGet(text.length());
+		if(result != null)
+			Metrics.NATIVE_CHARS_OUT.addAndGet(result.length());
+		return result;
+	}
+}
@@ -0,0 +1,188 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * A set of line indexes kept as a bit mask, one bit per line.  Adding or
+ * removing lines moves the bits of the lines after them, a word at a time,
+ * so the set keeps following the same lines.
+ * </p>
+ */
+final class LineFlags
+{
+	private long words[] = new long[1];
+
+	boolean get(int index)
+	{
+		int word = index >>> 6;
+		return word < words.length && (words[word] & 1L << index) != 0;
+	}
+
+	void set(int index, boolean value)
+	{
+		set(index, index + 1, value);
+	}
+
+	/**
+	 * <p>
+	 * Sets or clears the lines from <code>start</code> up to but not
+	 * including <code>end</code>.
+	 * </p>
+	 */
+	void set(int start, int end, boolean value)
+	{
+		if(start >= end)
+			return;
+		if(value)
+			ensureCapacity(end);
+		else if(start >= words.length * 64)
+			return;
+		else
+			end = Math.min(end, words.length * 64);
+
+		for(int word = start >>> 6; word <= (end - 1) >>> 6; word++)
+		{
+			long mask = maskFrom(word, start) & ~maskFrom(word, end);
+			if(value)
+				words[word] |= mask;
+			else
+				words[word] &= ~mask;
+		}
+	}
+
+	void clear()
+	{
+		words = new long[1];
+	}
+
+	boolean isEmpty()
+	{
+		for(long word : words)
+			if(word != 0)
+				return false;
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Makes room for <code>count</code> lines added at <code>index</code>,
+	 * which are not in the set.
+	 * </p>
+	 */
+	void insert(int index, int count)
+	{
+		int end = length();
+		if(count <= 0 || end <= index)
+			return;
+		ensureCapacity(end + count);
+
+		//   from the top down, so words are read before they are written
+		for(int word = (end + count - 1) >>> 6; word >= index >>> 6; word--)
+		{
+			long keep = ~maskFrom(word, index);
+			long moved = maskFrom(word, index + count);
+			words[word] = words[word] & keep | bitsAt((long)word * 64 - count) & moved;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Removes <code>count</code> lines at <code>index</code>.
+	 * </p>
+	 */
+	void remove(int index, int count)
+	{
+		int end = length();
+		if(count <= 0 || end <= index)
+			return;
+
+		//   from the bottom up, so words are read before they are written
+		for(int word = index >>> 6; word <= (end - 1) >>> 6; word++)
+		{
+			long keep = ~maskFrom(word, index);
+			words[word] = words[word] & keep | bitsAt((long)word * 64 + count) & ~keep;
+		}
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Returns one more than the last line in the set.
+	 * </p>
+	 */
+	private int length()
+	{
+		for(int word = words.length - 1; word >= 0; word--)
+			if(words[word] != 0)
+				return word * 64 + 64 - Long.numberOfLeadingZeros(words[word]);
+		return 0;
+	}
+
+	private void ensureCapacity(int length)
+	{
+		int count = (length + 63) >>> 6;
+		if(count <= words.length)
+			return;
+		long grown[] = new long[Math.max(count, words.length * 2)];
+		System.arraycopy(words, 0, grown, 0, words.length);
+		words = grown;
+	}
+
+	/**
+	 * <p>
+	 * Returns the bits of <code>word</code> for lines at or after
+	 * <code>index</code>.
+	 * </p>
+	 */
+	private static long maskFrom(int word, int index)
+	{
+		int bit = index - word * 64;
+		if(bit <= 0)
+			return -1L;
+		if(bit >= 64)
+			return 0;
+		return -1L << bit;
+	}
+
+	/**
+	 * <p>
+	 * Returns the 64 bits starting at line <code>index</code>, which may be
+	 * before the first line.
+	 * </p>
+	 */
+	private long bitsAt(long index)
+	{
+		if(index <= -64)
+			return 0;
+		if(index < 0)
+			return getWord(0) << -index;
+		int word = (int)(index >>> 6);
+		int bit = (int)(index & 63);
+		long bits = getWord(word) >>> bit;
+		if(bit != 0)
+			bits |= getWord(word + 1) << 64 - bit;
+		return bits;
+	}
+
+	private long getWord(int word)
+	{
+		if(word < words.length)
+			return words[word];
+		return 0;
+	}
+}
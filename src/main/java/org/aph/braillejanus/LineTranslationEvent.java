@@ -0,0 +1,51 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * <p>
+ * Flight recorder event for translating a single line, whether from the
+ * cache or by the translator.  Only translations slower than the threshold
+ * are recorded by default, as there is one event per line.
+ * </p>
+ */
+@Name("org.aph.braillejanus.LineTranslation")
+@Label("Line Translation")
+@Category("BrailleJanus")
+@Threshold("1 ms")
+@Description("Translation of a single line")
+final class LineTranslationEvent extends Event
+{
+	@Label("Table")
+	String table;
+
+	@Label("Forward")
+	boolean forward;
+
+	@Label("Input Length")
+	int inputLength;
+
+	@Label("Translated")
+	@Description("False if the translation failed and the line was left empty")
+	boolean translated;
+}
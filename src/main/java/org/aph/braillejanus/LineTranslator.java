@@ -0,0 +1,93 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * Translates single lines with one table, through a
+ * {@link TranslationCache}.  Does not depend on SWT, and is safe to use
+ * from any thread.
+ * </p>
+ */
+final class LineTranslator
+{
+	static final String DEFAULT_TABLE = "english-ueb-grade2.rst";
+
+	private static final String LINE_DELIMITER = System.getProperty("line.separator");
+
+	private final String table;
+	private final TranslationCache translationCache;
+	private final WordTranslator wordTranslator;
+
+	LineTranslator(String table, TranslationCache translationCache)
+	{
+		this.table = table;
+		this.translationCache = translationCache;
+		wordTranslator = new WordTranslator(translationCache);
+	}
+
+	/**
+	 * <p>
+	 * Translates a single line, including its line delimiter.
+	 * </p>
+	 */
+	String translateLine(String line, boolean forward)
+	{
+		Metrics.LINES_TRANSLATED.incrementAndGet();
+		if(line.length() == 0)
+			return "";
+		if(line.equals(LINE_DELIMITER))
+			return LINE_DELIMITER;
+
+		Object event = FlightRecorder.beginLineTranslation();
+		String result = translate(line, forward);
+		FlightRecorder.commitLineTranslation(event, table, forward, line.length(), result != null);
+
+		if(result == null)
+		{
+			if(line.lastIndexOf(LINE_DELIMITER) >= 0)
+				return LINE_DELIMITER;
+			return "";
+		}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Returns the translation of <code>line</code>, or <code>null</code> if
+	 * it fails.
+	 * </p>
+	 */
+	private String translate(String line, boolean forward)
+	{
+		//   long lines are translated by words, so only changed words miss the cache
+		if(forward && line.length() >= WordTranslator.MIN_LENGTH)
+		{
+			int length = line.length();
+			String delimiter = "";
+			if(line.endsWith(LINE_DELIMITER))
+			{
+				length -= LINE_DELIMITER.length();
+				delimiter = LINE_DELIMITER;
+			}
+			String result = wordTranslator.translate(table, line.substring(0, length));
+			if(result != null)
+				return result + delimiter;
+		}
+
+		return translationCache.translate(table, forward, line);
+	}
+}
@@ -0,0 +1,560 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Balanced (AVL) tree of lines indexed by line number, where every
+ * subtree also keeps its line count and total character length.  This
+ * gives O(log n) access by line index and by character offset, and
+ * O(log n) insertion and removal of lines.
+ * </p><p>
+ * An entry holds either one line, or a run of lines read by index from a
+ * {@link Lines}, such as a mapped file, so unedited lines need no entry
+ * or line object of their own.  A run is split only when a line in it is
+ * changed, or lines are added or removed inside it.
+ * </p><p>
+ * Entries are never changed once made.  A change makes new entries from
+ * the root down to the changed line and shares the rest, so
+ * {@link #copy()} is O(1), and a copy may be read from any thread while
+ * the original keeps changing.  Lines must not change either.
+ * </p>
+ */
+final class LineTree<T extends CharSequence>
+{
+	private Entry<T> root;
+
+	LineTree(){}
+
+	private LineTree(Entry<T> root)
+	{
+		this.root = root;
+	}
+
+	/**
+	 * <p>
+	 * Lines that are read by index, and whose offsets are known without
+	 * reading them.
+	 * </p>
+	 */
+	interface Lines<T extends CharSequence>
+	{
+		T get(int index);
+
+		/**
+		 * <p>
+		 * Returns the character offset of the start of the line at
+		 * <code>index</code>, where <code>index</code> may be one past the
+		 * last line.
+		 * </p>
+		 */
+		int getOffset(int index);
+
+		int getLineAtOffset(int offset);
+	}
+
+	private static final class Entry<T extends CharSequence>
+	{
+		//   the line, or the lines from first of lines
+		final T line;
+		final Lines<T> lines;
+		final int first, size;
+
+		final Entry<T> left, right;
+		final int height, count, length;
+
+		Entry(T line, Lines<T> lines, int first, int size, Entry<T> left, Entry<T> right)
+		{
+			this.line = line;
+			this.lines = lines;
+			this.first = first;
+			this.size = size;
+			this.left = left;
+			this.right = right;
+			height = Math.max(height(left), height(right)) + 1;
+			count = count(left) + count(right) + size;
+			length = length(left) + length(right) + (lines == null ? line.length() : lines.getOffset(first + size) - lines.getOffset(first));
+		}
+
+		Entry(T line, Entry<T> left, Entry<T> right)
+		{
+			this(line, null, 0, 1, left, right);
+		}
+
+		/**
+		 * <p>
+		 * Makes an entry with the line or lines of <code>item</code>.
+		 * </p>
+		 */
+		Entry(Entry<T> item, Entry<T> left, Entry<T> right)
+		{
+			this(item.line, item.lines, item.first, item.size, left, right);
+		}
+
+		int getOwnLength()
+		{
+			return length - length(left) - length(right);
+		}
+
+		T get(int index)
+		{
+			if(lines == null)
+				return line;
+			return lines.get(first + index);
+		}
+
+		int getOffset(int index)
+		{
+			if(lines == null)
+				return 0;
+			return lines.getOffset(first + index) - lines.getOffset(first);
+		}
+
+		int getLineAtOffset(int offset)
+		{
+			if(lines == null)
+				return 0;
+			return lines.getLineAtOffset(lines.getOffset(first) + offset) - first;
+		}
+
+		/**
+		 * <p>
+		 * Returns an entry with no subtrees for the lines from
+		 * <code>start</code> to <code>end</code> of this one's.
+		 * </p>
+		 */
+		Entry<T> sub(int start, int end)
+		{
+			return new Entry<>(null, lines, first + start, end - start, null, null);
+		}
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Returns a tree with the same lines, unaffected by later changes to
+	 * this one.
+	 * </p>
+	 */
+	LineTree<T> copy()
+	{
+		return new LineTree<>(root);
+	}
+
+	int size()
+	{
+		return count(root);
+	}
+
+	int getCharCount()
+	{
+		return length(root);
+	}
+
+	T get(int index)
+	{
+		if(index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("line " + index);
+		return get(root, index);
+	}
+
+	/**
+	 * <p>
+	 * Returns the character offset of the start of the line at
+	 * <code>index</code>, or the total character count if
+	 * <code>index</code> is past the last line.
+	 * </p>
+	 */
+	int getOffset(int index)
+	{
+		int offset = 0;
+		Entry<T> entry = root;
+		while(entry != null)
+		{
+			int leftCount = count(entry.left);
+			if(index < leftCount)
+				entry = entry.left;
+			else if(index < leftCount + entry.size)
+				return offset + length(entry.left) + entry.getOffset(index - leftCount);
+			else
+			{
+				index -= leftCount + entry.size;
+				offset += entry.length - length(entry.right);
+				entry = entry.right;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * <p>
+	 * Returns the index of the line containing <code>offset</code>.  Offsets
+	 * at or past the end return the last line.
+	 * </p>
+	 */
+	int getLineAtOffset(int offset)
+	{
+		if(offset >= getCharCount())
+			return size() - 1;
+
+		int index = 0;
+		Entry<T> entry = root;
+		while(entry != null)
+		{
+			int leftLength = length(entry.left);
+			if(offset < leftLength)
+			{
+				entry = entry.left;
+				continue;
+			}
+			offset -= leftLength;
+			index += count(entry.left);
+			int ownLength = entry.getOwnLength();
+			if(offset < ownLength)
+				return index + entry.getLineAtOffset(offset);
+			offset -= ownLength;
+			index += entry.size;
+			entry = entry.right;
+		}
+		return size() - 1;
+	}
+
+	void add(int index, T line)
+	{
+		if(index < 0 || index > size())
+			throw new IndexOutOfBoundsException("line " + index);
+		splitAt(index);
+		root = add(root, index, new Entry<>(line, null, null));
+	}
+
+	/**
+	 * <p>
+	 * Inserts <code>lines</code> at <code>index</code>, building them into a
+	 * balanced tree and joining it in O(k + log n) instead of adding them one
+	 * at a time.
+	 * </p>
+	 */
+	void addAll(int index, List<T> lines)
+	{
+		if(index < 0 || index > size())
+			throw new IndexOutOfBoundsException("line " + index);
+		Entry<T> added = build(lines, 0, lines.size());
+		root = join(join(splitLeft(root, index), added), splitRight(root, index));
+	}
+
+	/**
+	 * <p>
+	 * Replaces all lines with <code>lines</code>, building the tree balanced
+	 * in O(n) instead of adding them one at a time.
+	 * </p>
+	 */
+	void setAll(List<T> lines)
+	{
+		root = build(lines, 0, lines.size());
+	}
+
+	/**
+	 * <p>
+	 * Replaces all lines with the first <code>size</code> lines of
+	 * <code>lines</code>, held by a single entry, in O(1).
+	 * </p>
+	 */
+	void setAll(Lines<T> lines, int size)
+	{
+		root = size > 0 ? new Entry<>(null, lines, 0, size, null, null) : null;
+	}
+
+	/**
+	 * <p>
+	 * Replaces all lines with those of <code>tree</code>, sharing its
+	 * entries, in O(1).
+	 * </p>
+	 */
+	void setAll(LineTree<T> tree)
+	{
+		root = tree.root;
+	}
+
+	/**
+	 * <p>
+	 * Returns the first <code>index</code> lines of this tree followed by
+	 * the lines of <code>tree</code> from <code>treeIndex</code> on, in
+	 * O(log n).  Neither tree is changed.
+	 * </p>
+	 */
+	LineTree<T> splice(int index, LineTree<T> tree, int treeIndex)
+	{
+		return new LineTree<>(join(splitLeft(root, index), splitRight(tree.root, treeIndex)));
+	}
+
+	T remove(int index)
+	{
+		T line = get(index);
+		splitAt(index);
+		splitAt(index + 1);
+		root = remove(root, index);
+		return line;
+	}
+
+	void set(int index, T line)
+	{
+		if(index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("line " + index);
+		splitAt(index);
+		splitAt(index + 1);
+		root = set(root, index, line);
+	}
+
+	/**
+	 * <p>
+	 * Splits the run of lines that <code>index</code> is inside of, if any,
+	 * so that the line at <code>index</code> starts an entry.
+	 * </p>
+	 */
+	private void splitAt(int index)
+	{
+		int offset = index;
+		Entry<T> entry = root;
+		while(entry != null)
+		{
+			int leftCount = count(entry.left);
+			if(offset < leftCount)
+				entry = entry.left;
+			else if(offset == leftCount)
+				return;
+			else if(offset < leftCount + entry.size)
+			{
+				root = join(splitLeft(root, index), splitRight(root, index));
+				return;
+			}
+			else
+			{
+				offset -= leftCount + entry.size;
+				entry = entry.right;
+			}
+		}
+	}
+
+	////////////////////////////////////////
+
+	private static <T extends CharSequence> Entry<T> build(List<T> lines, int start, int end)
+	{
+		if(start >= end)
+			return null;
+		int middle = (start + end) >>> 1;
+		return new Entry<>(lines.get(middle), build(lines, start, middle), build(lines, middle + 1, end));
+	}
+
+	private static int count(Entry<?> entry)
+	{
+		return entry == null ? 0 : entry.count;
+	}
+
+	private static int length(Entry<?> entry)
+	{
+		return entry == null ? 0 : entry.length;
+	}
+
+	private static int height(Entry<?> entry)
+	{
+		return entry == null ? 0 : entry.height;
+	}
+
+	/**
+	 * <p>
+	 * Returns a new entry for the lines of <code>item</code> with the
+	 * subtrees, rotated if they differ in height by two.
+	 * </p>
+	 */
+	private static <T extends CharSequence> Entry<T> balance(Entry<T> item, Entry<T> left, Entry<T> right)
+	{
+		int factor = height(left) - height(right);
+		if(factor > 1)
+		{
+			if(height(left.left) < height(left.right))
+			{
+				Entry<T> middle = left.right;
+				return new Entry<>(middle, new Entry<>(left, left.left, middle.left), new Entry<>(item, middle.right, right));
+			}
+			return new Entry<>(left, left.left, new Entry<>(item, left.right, right));
+		}
+		if(factor < -1)
+		{
+			if(height(right.right) < height(right.left))
+			{
+				Entry<T> middle = right.left;
+				return new Entry<>(middle, new Entry<>(item, left, middle.left), new Entry<>(right, middle.right, right.right));
+			}
+			return new Entry<>(right, new Entry<>(item, left, right.left), right.right);
+		}
+		return new Entry<>(item, left, right);
+	}
+
+	/**
+	 * <p>
+	 * Adds the lines of <code>item</code> at <code>index</code>, which must
+	 * not be inside a run.
+	 * </p>
+	 */
+	private static <T extends CharSequence> Entry<T> add(Entry<T> entry, int index, Entry<T> item)
+	{
+		if(entry == null)
+			return item;
+
+		int leftCount = count(entry.left);
+		if(index <= leftCount)
+			return balance(entry, add(entry.left, index, item), entry.right);
+		return balance(entry, entry.left, add(entry.right, index - leftCount - entry.size, item));
+	}
+
+	/**
+	 * <p>
+	 * Removes the entry at <code>index</code>, which must hold only that
+	 * line.
+	 * </p>
+	 */
+	private static <T extends CharSequence> Entry<T> remove(Entry<T> entry, int index)
+	{
+		int leftCount = count(entry.left);
+		if(index < leftCount)
+			return balance(entry, remove(entry.left, index), entry.right);
+		if(index > leftCount)
+			return balance(entry, entry.left, remove(entry.right, index - leftCount - entry.size));
+
+		if(entry.left == null)
+			return entry.right;
+		if(entry.right == null)
+			return entry.left;
+
+		//   replace with first entry of right subtree
+		Entry<T> next = entry.right;
+		while(next.left != null)
+			next = next.left;
+		return balance(next, entry.left, removeFirst(entry.right));
+	}
+
+	private static <T extends CharSequence> Entry<T> removeFirst(Entry<T> entry)
+	{
+		if(entry.left == null)
+			return entry.right;
+		return balance(entry, removeFirst(entry.left), entry.right);
+	}
+
+	private static <T extends CharSequence> Entry<T> removeLast(Entry<T> entry)
+	{
+		if(entry.right == null)
+			return entry.left;
+		return balance(entry, entry.left, removeLast(entry.right));
+	}
+
+	/**
+	 * <p>
+	 * Returns the lines of <code>left</code>, then those of
+	 * <code>item</code>, then the lines of <code>right</code>, joined down
+	 * the side of the taller subtree until the heights are close enough.
+	 * </p>
+	 */
+	private static <T extends CharSequence> Entry<T> join(Entry<T> left, Entry<T> item, Entry<T> right)
+	{
+		if(height(left) > height(right) + 1)
+			return balance(left, left.left, join(left.right, item, right));
+		if(height(right) > height(left) + 1)
+			return balance(right, join(left, item, right.left), right.right);
+		return new Entry<>(item, left, right);
+	}
+
+	private static <T extends CharSequence> Entry<T> join(Entry<T> left, Entry<T> right)
+	{
+		if(left == null)
+			return right;
+		if(right == null)
+			return left;
+		Entry<T> last = left;
+		while(last.right != null)
+			last = last.right;
+		return join(removeLast(left), last, right);
+	}
+
+	/**
+	 * <p>
+	 * Returns the first <code>index</code> lines of <code>entry</code>.
+	 * </p>
+	 */
+	private static <T extends CharSequence> Entry<T> splitLeft(Entry<T> entry, int index)
+	{
+		if(entry == null)
+			return null;
+		int leftCount = count(entry.left);
+		if(index <= leftCount)
+			return splitLeft(entry.left, index);
+		if(index < leftCount + entry.size)
+			return join(entry.left, entry.sub(0, index - leftCount), null);
+		return join(entry.left, entry, splitLeft(entry.right, index - leftCount - entry.size));
+	}
+
+	/**
+	 * <p>
+	 * Returns the lines of <code>entry</code> from <code>index</code> on.
+	 * </p>
+	 */
+	private static <T extends CharSequence> Entry<T> splitRight(Entry<T> entry, int index)
+	{
+		if(entry == null)
+			return null;
+		int leftCount = count(entry.left);
+		if(index <= leftCount)
+			return join(splitRight(entry.left, index), entry, entry.right);
+		if(index < leftCount + entry.size)
+			return join(null, entry.sub(index - leftCount, entry.size), entry.right);
+		return splitRight(entry.right, index - leftCount - entry.size);
+	}
+
+	private static <T extends CharSequence> T get(Entry<T> entry, int index)
+	{
+		while(true)
+		{
+			int leftCount = count(entry.left);
+			if(index < leftCount)
+				entry = entry.left;
+			else if(index < leftCount + entry.size)
+				return entry.get(index - leftCount);
+			else
+			{
+				index -= leftCount + entry.size;
+				entry = entry.right;
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Replaces the line at <code>index</code>, whose entry must hold only
+	 * that line.
+	 * </p>
+	 */
+	private static <T extends CharSequence> Entry<T> set(Entry<T> entry, int index, T line)
+	{
+		int leftCount = count(entry.left);
+		if(index < leftCount)
+			return new Entry<>(entry, set(entry.left, index, line), entry.right);
+		if(index > leftCount)
+			return new Entry<>(entry, entry.left, set(entry.right, index - leftCount - entry.size, line));
+		return new Entry<>(line, entry.left, entry.right);
+	}
+}
@@ -0,0 +1,48 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * <p>
+ * Flight recorder event for notifying the listeners of a pane that its
+ * content is changing or has changed.  Only notifications slower than the
+ * threshold are recorded by default.
+ * </p>
+ */
+@Name("org.aph.braillejanus.Listener")
+@Label("Listener Notification")
+@Category("BrailleJanus")
+@Threshold("1 ms")
+@Description("Time spent in the text change listeners of a pane")
+final class ListenerEvent extends Event
+{
+	@Label("Pane")
+	String pane;
+
+	@Label("Changed")
+	@Description("Whether textChanged, rather than textChanging, was sent")
+	boolean changed;
+
+	@Label("Listener Count")
+	int listenerCount;
+}
@@ -19,9 +19,32 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Shell;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * <p>
+ * Logs messages to standard error and to a log file, and keeps the most
+ * recent messages in memory for {@link #getString()}.  Messages are
+ * written by a background thread, in batches, so logging does not wait
+ * on output, and messages are dropped if the writer falls too far
+ * behind.  Errors wait briefly for room first, but never long enough to
+ * stall the UI thread.  The log file is rotated once it grows past
+ * MAX_FILE_LENGTH.
+ * </p><p>
+ * Messages below the current level are discarded.  Callers that build
+ * costly messages should check {@link #isLoggable(int)} first, or use
+ * {@link #format(int, String, Object...)}.
+ * </p>
+ */
 public final class Log
 {
 	static final int LOG_ALL = 0;
@@ -32,8 +55,36 @@ public final class Log
 	static final int LOG_ERROR = 5;
 	static final int LOG_FATAL = 6;
 
-	private static final StringWriter logString = new StringWriter();
-	private static final PrintWriter logWriter = new PrintWriter(logString);
+	//   messages kept for getString
+	static final int RECENT_COUNT = 0x400;
+
+	//   messages waiting to be written
+	private static final int QUEUE_SIZE = 0x1000;
+
+	//   longest an error waits for room in the queue before it is dropped
+	private static final long ERROR_WAIT_MILLIS = 50;
+
+	static final long MAX_FILE_LENGTH = 0x100000;
+
+	//   rotated log files kept, as .1 through .FILE_COUNT
+	private static final int FILE_COUNT = 3;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String recent[] = new String[RECENT_COUNT];
+	private static int recentNext, recentCount;
+
+	private static final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	private static final AtomicLong dropped = new AtomicLong();
+	private static final Object writeLock = new Object();
+	private static Thread writerThread;
+
+	private static File file = getDefaultFile();
+	private static BufferedWriter fileWriter;
+	private static long fileLength;
+
+	private static volatile int level = LOG_INFO;
 
 	private static Shell shell;
 
@@ -44,13 +95,52 @@ public final class Log
 		Log.shell = shell;
 	}
 
+	static void setLevel(int level)
+	{
+		Log.level = level;
+	}
+
+	static boolean isLoggable(int level)
+	{
+		return level >= Log.level;
+	}
+
+	/**
+	 * <p>
+	 * Sets the log file, or <code>null</code> to only log to standard
+	 * error.
+	 * </p>
+	 */
+	static void setFile(File file)
+	{
+		synchronized(writeLock)
+		{
+			closeFile();
+			Log.file = file;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the most recent messages, oldest first.
+	 * </p>
+	 */
 	static String getString()
 	{
-		return logString.toString();
+		StringBuilder string = new StringBuilder(RECENT_COUNT * 0x40);
+		synchronized(recent)
+		{
+			for(int i = 0; i < recentCount; i++)
+				string.append(recent[(recentNext - recentCount + i + RECENT_COUNT) % RECENT_COUNT]).append(LINE_SEPARATOR);
+		}
+		return string.toString();
 	}
 
 	static void message(int level, String message, boolean showDialog)
 	{
+		if(!isLoggable(level))
+			return;
+
 		String string;
 
 		switch(level)
@@ -67,10 +157,33 @@ public final class Log
 
 		if(message != null)
 			string += message;
-		System.err.println(string);
-		System.err.flush();
-		logWriter.println(string);
-		logWriter.flush();
+
+		synchronized(recent)
+		{
+			recent[recentNext] = string;
+			recentNext = (recentNext + 1) % RECENT_COUNT;
+			if(recentCount < RECENT_COUNT)
+				recentCount++;
+		}
+
+		//   errors wait a little for room, unless messages are already being dropped,
+		//   anything less is dropped at once when the writer falls behind
+		startWriter();
+		boolean queued;
+		if(level >= LOG_ERROR && dropped.get() == 0)
+			try
+			{
+				queued = queue.offer(string, ERROR_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException ignored)
+			{
+				Thread.currentThread().interrupt();
+				queued = false;
+			}
+		else
+			queued = queue.offer(string);
+		if(!queued)
+			dropped.incrementAndGet();
 
 		if(showDialog && shell != null)
 		{
@@ -89,4 +202,167 @@ public final class Log
 	{
 		message(level, error.getMessage(), showDialog);
 	}
+
+	/**
+	 * <p>
+	 * Logs a message built with {@link String#format(String, Object...)},
+	 * only if <code>level</code> is loggable.
+	 * </p>
+	 */
+	static void format(int level, String format, Object... args)
+	{
+		if(!isLoggable(level))
+			return;
+		message(level, String.format(format, args), false);
+	}
+
+	/**
+	 * <p>
+	 * Writes any queued messages before returning.
+	 * </p>
+	 */
+	static void flush()
+	{
+		synchronized(writeLock)
+		{
+			ArrayList<String> messages = new ArrayList<>();
+			queue.drainTo(messages);
+			write(messages);
+		}
+	}
+
+	////////////////////////////////////////
+
+	private static synchronized void startWriter()
+	{
+		if(writerThread != null)
+			return;
+
+		writerThread = new Thread(new Writer(), "BrailleJanus-log");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		//   daemon thread may not get to write messages logged just before exit
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				flush();
+			}
+		}));
+	}
+
+	private static final class Writer implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			ArrayList<String> messages = new ArrayList<>();
+			try
+			{
+				while(true)
+				{
+					String message = queue.take();
+					synchronized(writeLock)
+					{
+						messages.add(message);
+						queue.drainTo(messages);
+						write(messages);
+					}
+					messages.clear();
+				}
+			}
+			catch(InterruptedException ignored)
+			{
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Writes messages and flushes once.  Must hold writeLock.
+	 * </p>
+	 */
+	private static void write(ArrayList<String> messages)
+	{
+		long droppedCount = dropped.getAndSet(0);
+		if(droppedCount > 0)
+			messages.add("WARNING:  " + droppedCount + " log messages dropped");
+		if(messages.isEmpty())
+			return;
+
+		for(String message : messages)
+			System.err.println(message);
+		System.err.flush();
+
+		if(file == null)
+			return;
+		try
+		{
+			for(String message : messages)
+			{
+				if(fileWriter == null || fileLength > MAX_FILE_LENGTH)
+					openFile();
+				fileWriter.write(message);
+				fileWriter.write(LINE_SEPARATOR);
+				fileLength += message.length() + LINE_SEPARATOR.length();
+			}
+			fileWriter.flush();
+		}
+		catch(IOException exception)
+		{
+			//   cannot log this, so give up on the file
+			System.err.println("ERROR:  unable to write log file " + file.getPath() + ":  " + exception.getMessage());
+			closeFile();
+			file = null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Opens the log file, first rotating it if it has grown too long.
+	 * </p>
+	 */
+	private static void openFile() throws IOException
+	{
+		closeFile();
+
+		if(file.length() > MAX_FILE_LENGTH)
+		{
+			new File(file.getPath() + "." + FILE_COUNT).delete();
+			for(int i = FILE_COUNT - 1; i > 0; i--)
+				new File(file.getPath() + "." + i).renameTo(new File(file.getPath() + "." + (i + 1)));
+			file.renameTo(new File(file.getPath() + ".1"));
+		}
+
+		fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+		fileLength = file.length();
+	}
+
+	private static void closeFile()
+	{
+		if(fileWriter == null)
+			return;
+		try
+		{
+			fileWriter.close();
+		}
+		catch(IOException ignored)
+		{
+			//   nothing else to do
+		}
+		fileWriter = null;
+	}
+
+	private static File getDefaultFile()
+	{
+		String fileName = System.getProperty("user.home") + File.separator;
+		if(Settings.OS_NAME.startsWith("windows"))
+			fileName += "AppData" + File.separator + "Local" + File.separator + "BrailleJanus.log";
+		else
+			fileName += ".braillejanus.log";
+		return new File(fileName);
+	}
 }
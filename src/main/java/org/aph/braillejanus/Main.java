@@ -16,7 +16,6 @@
 package org.aph.braillejanus;
 
 import org.aph.braillejanus.actions.Actions;
-import org.aph.liblouisaph.LibLouisAPH;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.ShellAdapter;
@@ -29,11 +28,8 @@ import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.swt.widgets.Shell;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 
 /**
  * <p>
@@ -49,32 +45,53 @@ public final class Main
 
 	public static void main(String args[])
 	{
+		//   translate files without a display
+		if(args.length > 0 && args[0].equals("-batch"))
+		{
+			BatchTranslator.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		//   serve translations without a display
+		if(args.length > 0 && args[0].equals("-server"))
+		{
+			TranslationServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		new Main(args);
 	}
 
 	private Main(String args[])
 	{
+		//   load native library while the user interface is built
+		Startup startup = new Startup();
+		startup.loadLibrary(LineTranslator.DEFAULT_TABLE);
+
 		//   must be before display is created (on Macs at least)
 		Display.setAppName("BrailleJanus");
 
 		display = Display.getDefault();
+		startup.phase("display");
 
-		//   load fonts
-		loadFont("APH_Braille_Font-6.otf");
-		loadFont("APH_Braille_Font-6b.otf");
-		loadFont("APH_Braille_Font-6s.otf");
-		loadFont("APH_Braille_Font-6sb.otf");
-		loadFont("APH_Braille_Font-8.otf");
-		loadFont("APH_Braille_Font-8b.otf");
-		loadFont("APH_Braille_Font-8s.otf");
-		loadFont("APH_Braille_Font-8sb.otf");
-		loadFont("APH_Braille_Font-8w.otf");
-		loadFont("APH_Braille_Font-8wb.otf");
-		loadFont("APH_Braille_Font-8ws.otf");
-		loadFont("APH_Braille_Font-8wsb.otf");
+		Metrics.register();
 
 		settings = new Settings(display, null);
 		settings.readSettings();
+		startup.phase("settings");
+
+		//   other fonts are loaded when first used
+		FontLoader fontLoader = new FontLoader(display, settings.getVersion());
+		fontLoader.load(TextEditors.BRAILLE_FONT);
+		startup.phase("fonts");
+
+		Translator translator = new LibLouisTranslator();
+		PersistentTranslationCache persistentCache = null;
+		if(settings.getPersistentCache())
+		{
+			persistentCache = new PersistentTranslationCache(translator, PersistentTranslationCache.getDefaultFile(), settings.getPersistentCacheLength());
+			translator = persistentCache;
+		}
 
 		//   needed to catch Quit (Command-Q) on Macs
 		display.addListener(SWT.Close, new CloseHandler());
@@ -86,12 +103,12 @@ public final class Main
 
 		Log.setShell(shell);
 
-		textEditors = new TextEditors(shell);
+		textEditors = new TextEditors(shell, fontLoader, translator);
+		startup.phase("shell");
 
 		try
 		{
-			LibLouisAPH.loadLibraryInternal();
-			LibLouisAPH.setInternalTablePath();
+			startup.awaitLibrary();
 		}
 		catch(IOException exception)
 		{
@@ -100,15 +117,34 @@ public final class Main
 		}
 
 		new Actions(shell, settings, textEditors);
+		startup.phase("actions");
+
+		//   file to open
+		if(args.length > 0)
+			try
+			{
+				textEditors.openFile(new File(args[0]));
+			}
+			catch(IOException exception)
+			{
+				Log.message(Log.LOG_ERROR, exception, true);
+			}
 
 		//   need to set size after everything is added
 		shell.setSize(640, 480);
 		shell.open();
+		startup.phase("open");
+		startup.log();
 		while(!shell.isDisposed())
 		if(!display.readAndDispatch())
 			display.sleep();
 
 		display.dispose();
+
+		if(persistentCache != null)
+			persistentCache.close();
+
+		Metrics.log();
 	}
 
 	private boolean checkClosing()
@@ -149,41 +185,4 @@ public final class Main
 			event.doit = checkClosing();
 		}
 	}
-
-	private void loadFont(String fontFileName)
-	{
-		InputStream fontInputStream = getClass().getResourceAsStream("/fonts/" + fontFileName);
-		if(fontInputStream == null)
-		{
-			Log.message(Log.LOG_WARNING, "Unable to open font resource:  " + fontFileName, false);
-			return;
-		}
-
-		try
-		{
-			File fontFile = new File(System.getProperty("java.io.tmpdir") + File.separator + fontFileName);
-			Files.copy(fontInputStream, fontFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-			display.loadFont(fontFile.getPath());
-			fontFile.deleteOnExit();
-		}
-		catch(FileNotFoundException exception)
-		{
-			Log.message(Log.LOG_ERROR, exception, false);
-		}
-		catch(IOException exception)
-		{
-			Log.message(Log.LOG_ERROR, exception, false);
-		}
-		finally
-		{
-			try
-			{
-				fontInputStream.close();
-			}
-			catch(IOException exception)
-			{
-				Log.message(Log.LOG_ERROR, exception, false);
-			}
-		}
-	}
 }
@@ -0,0 +1,329 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * The lines of a text file, read through a read-only memory mapping of
+ * the file.  Only the byte and char offsets of the start of every line
+ * are kept on the heap, and a line is decoded when it is read, so a
+ * {@link LineTree} holds the whole file in one entry.  Lines may end with
+ * <code>\n</code> or <code>\r\n</code> in the file, and are read ending
+ * with the content's line delimiter instead.
+ * </p><p>
+ * The file is decoded as UTF-8, or as ISO-8859-1 if it is not valid
+ * UTF-8, so the length of every line is known without decoding it.
+ * </p>
+ */
+final class MappedText implements LineTree.Lines<CharSequence>
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private final MappedByteBuffer buffer;
+	private final String lineDelimiter;
+	private final Charset charset;
+
+	//   byte offset of the start of each line, and of the end of the file
+	private int starts[];
+
+	//   char offset of the start of each line, and of the end of the text
+	private int offsets[];
+
+	private int lineCount;
+	private long charCount;
+
+	//   most recently decoded line
+	private volatile Decoded decoded = new Decoded(-1, null);
+
+	MappedText(File file, String lineDelimiter) throws IOException
+	{
+		this.lineDelimiter = lineDelimiter;
+
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel())
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException(file.getPath() + " is too large to map");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if(indexLines(true))
+			charset = UTF_8;
+		else
+		{
+			indexLines(false);
+			charset = ISO_8859_1;
+		}
+	}
+
+	int getLineCount()
+	{
+		return lineCount;
+	}
+
+	/**
+	 * <p>
+	 * Returns the line at <code>index</code>, which is decoded each time
+	 * its text is read.
+	 * </p>
+	 */
+	@Override
+	public CharSequence get(int index)
+	{
+		return new Line(index);
+	}
+
+	@Override
+	public int getOffset(int index)
+	{
+		return offsets[index];
+	}
+
+	@Override
+	public int getLineAtOffset(int offset)
+	{
+		int low = 0, high = lineCount - 1;
+		while(low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			if(offsets[middle] <= offset)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Finds the start and length of every line, counting chars as UTF-8 if
+	 * <code>utf8</code>.  Returns false if the file is not valid UTF-8.
+	 * </p>
+	 */
+	private boolean indexLines(boolean utf8) throws IOException
+	{
+		int size = buffer.capacity();
+		starts = new int[0x400];
+		offsets = new int[0x400];
+		lineCount = 0;
+		charCount = 0;
+
+		int start = 0, length = 0, expected = 0;
+		for(int i = 0; i < size; i++)
+		{
+			int b = buffer.get(i) & 0xff;
+			if(expected > 0)
+			{
+				if((b & 0xc0) != 0x80)
+					return false;
+				expected--;
+				continue;
+			}
+			if(b == '\n')
+			{
+				int end = length;
+				if(i > start && buffer.get(i - 1) == '\r')
+					end--;
+				addLine(start, end + lineDelimiter.length());
+				start = i + 1;
+				length = 0;
+				continue;
+			}
+
+			length++;
+			if(!utf8 || b < 0x80)
+				continue;
+			if(b >= 0xc2 && b <= 0xdf)
+				expected = 1;
+			else if(b >= 0xe0 && b <= 0xef)
+				expected = 2;
+			else if(b >= 0xf0 && b <= 0xf4)
+			{
+				//   a surrogate pair
+				expected = 3;
+				length++;
+			}
+			else
+				return false;
+			if(!isValidSecond(b, i + 1 < size ? buffer.get(i + 1) & 0xff : 0))
+				return false;
+		}
+		if(expected > 0)
+			return false;
+
+		addLine(start, length);
+		starts[lineCount] = size;
+		offsets[lineCount] = (int)charCount;
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Returns false for the overlong forms, surrogates and values past
+	 * U+10FFFF that are not valid UTF-8.
+	 * </p>
+	 */
+	private static boolean isValidSecond(int first, int second)
+	{
+		switch(first)
+		{
+		case 0xe0:  return second >= 0xa0;
+		case 0xed:  return second < 0xa0;
+		case 0xf0:  return second >= 0x90;
+		case 0xf4:  return second < 0x90;
+		default:    return true;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Adds a line starting at byte <code>start</code>, of
+	 * <code>length</code> chars including its line delimiter.
+	 * </p>
+	 */
+	private void addLine(int start, int length) throws IOException
+	{
+		if(lineCount + 1 >= starts.length)
+		{
+			int grown[] = new int[starts.length * 2];
+			System.arraycopy(starts, 0, grown, 0, lineCount);
+			starts = grown;
+			grown = new int[offsets.length * 2];
+			System.arraycopy(offsets, 0, grown, 0, lineCount);
+			offsets = grown;
+		}
+		starts[lineCount] = start;
+		offsets[lineCount] = (int)charCount;
+		lineCount++;
+
+		charCount += length;
+		if(charCount > Integer.MAX_VALUE)
+			throw new IOException("too many characters to map");
+	}
+
+	private boolean hasDelimiter(int index)
+	{
+		return index < lineCount - 1;
+	}
+
+	private int getLength(int index)
+	{
+		return offsets[index + 1] - offsets[index];
+	}
+
+	/**
+	 * <p>
+	 * Returns the byte offset of the end of the line at <code>index</code>,
+	 * before its line delimiter.
+	 * </p>
+	 */
+	private int getEnd(int index)
+	{
+		int end = starts[index + 1];
+		if(hasDelimiter(index))
+		{
+			end--;
+			if(end > starts[index] && buffer.get(end - 1) == '\r')
+				end--;
+		}
+		return end;
+	}
+
+	private char charAt(int index, int offset)
+	{
+		//   one byte per char needs no decoding
+		int start = starts[index];
+		int length = getLength(index) - (hasDelimiter(index) ? lineDelimiter.length() : 0);
+		if(offset < length && length == getEnd(index) - start)
+			return (char)(buffer.get(start + offset) & 0xff);
+		return getString(index).charAt(offset);
+	}
+
+	private String getString(int index)
+	{
+		Decoded decoded = this.decoded;
+		if(decoded.index == index)
+			return decoded.string;
+
+		int start = starts[index];
+		byte bytes[] = new byte[getEnd(index) - start];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(start + i);
+
+		String string = new String(bytes, charset);
+		if(hasDelimiter(index))
+			string += lineDelimiter;
+		this.decoded = new Decoded(index, string);
+		return string;
+	}
+
+	private static final class Decoded
+	{
+		final int index;
+		final String string;
+
+		Decoded(int index, String string)
+		{
+			this.index = index;
+			this.string = string;
+		}
+	}
+
+	////////////////////////////////////////
+
+	private final class Line implements CharSequence
+	{
+		private final int index;
+
+		private Line(int index)
+		{
+			this.index = index;
+		}
+
+		@Override
+		public int length()
+		{
+			return getLength(index);
+		}
+
+		@Override
+		public char charAt(int offset)
+		{
+			return MappedText.this.charAt(index, offset);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end)
+		{
+			return getString(index).substring(start, end);
+		}
+
+		@Override
+		public String toString()
+		{
+			return getString(index);
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Counters and latency histograms for editing and translation, shared by
+ * every document in the process.  They are exposed through JMX by
+ * {@link #register()} and written to the log by {@link #log()}.
+ * </p>
+ */
+final class Metrics implements MetricsMXBean
+{
+	static final Histogram REPLACE_TEXT_RANGE = new Histogram();
+	static final Histogram UPDATE_FORWARD = new Histogram();
+	static final Histogram UPDATE_BACKWARD = new Histogram();
+	static final Histogram NATIVE_TRANSLATE = new Histogram();
+	static final Histogram LINES_PER_EDIT = new Histogram();
+
+	static final AtomicLong LINES_TRANSLATED = new AtomicLong();
+	static final AtomicLong NATIVE_CHARS_IN = new AtomicLong();
+	static final AtomicLong NATIVE_CHARS_OUT = new AtomicLong();
+	static final AtomicLong CACHE_HITS = new AtomicLong();
+	static final AtomicLong CACHE_MISSES = new AtomicLong();
+	static final AtomicLong RESPONSE_CACHE_HITS = new AtomicLong();
+	static final AtomicLong RESPONSE_CACHE_MISSES = new AtomicLong();
+
+	private static final String OBJECT_NAME = "org.aph.braillejanus:type=Metrics";
+
+	private static boolean registered;
+
+	private Metrics(){}
+
+	/**
+	 * <p>
+	 * Registers the metrics with the platform MBean server, once.
+	 * </p>
+	 */
+	static synchronized void register()
+	{
+		if(registered)
+			return;
+		registered = true;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(), new ObjectName(OBJECT_NAME));
+		}
+		catch(JMException exception)
+		{
+			Log.message(Log.LOG_WARNING, exception, false);
+		}
+	}
+
+	static void log()
+	{
+		if(!Log.isLoggable(Log.LOG_INFO))
+			return;
+
+		Log.message(Log.LOG_INFO, "replaceTextRange us:  " + REPLACE_TEXT_RANGE.toString(1000), false);
+		Log.message(Log.LOG_INFO, "updateForward us:  " + UPDATE_FORWARD.toString(1000), false);
+		Log.message(Log.LOG_INFO, "updateBackward us:  " + UPDATE_BACKWARD.toString(1000), false);
+		Log.message(Log.LOG_INFO, "native translate us:  " + NATIVE_TRANSLATE.toString(1000) + ", chars in " + NATIVE_CHARS_IN.get() + ", chars out " + NATIVE_CHARS_OUT.get(), false);
+		Log.message(Log.LOG_INFO, "lines per edit:  " + LINES_PER_EDIT.toString(1) + ", lines translated " + LINES_TRANSLATED.get(), false);
+		Log.message(Log.LOG_INFO, "translation cache:  hits " + CACHE_HITS.get() + ", misses " + CACHE_MISSES.get(), false);
+		if(RESPONSE_CACHE_HITS.get() + RESPONSE_CACHE_MISSES.get() > 0)
+			Log.message(Log.LOG_INFO, "server response cache:  hits " + RESPONSE_CACHE_HITS.get() + ", misses " + RESPONSE_CACHE_MISSES.get(), false);
+
+		//   may be called from a shutdown hook
+		Log.flush();
+	}
+
+	////////////////////////////////////////
+
+	@Override
+	public long getReplaceTextRangeCount()
+	{
+		return REPLACE_TEXT_RANGE.getCount();
+	}
+
+	@Override
+	public long getReplaceTextRangeP50Micros()
+	{
+		return REPLACE_TEXT_RANGE.getPercentile(50) / 1000;
+	}
+
+	@Override
+	public long getReplaceTextRangeP99Micros()
+	{
+		return REPLACE_TEXT_RANGE.getPercentile(99) / 1000;
+	}
+
+	@Override
+	public long getReplaceTextRangeMaxMicros()
+	{
+		return REPLACE_TEXT_RANGE.getMax() / 1000;
+	}
+
+	@Override
+	public long getUpdateForwardCount()
+	{
+		return UPDATE_FORWARD.getCount();
+	}
+
+	@Override
+	public long getUpdateForwardP50Micros()
+	{
+		return UPDATE_FORWARD.getPercentile(50) / 1000;
+	}
+
+	@Override
+	public long getUpdateForwardP99Micros()
+	{
+		return UPDATE_FORWARD.getPercentile(99) / 1000;
+	}
+
+	@Override
+	public long getUpdateForwardMaxMicros()
+	{
+		return UPDATE_FORWARD.getMax() / 1000;
+	}
+
+	@Override
+	public long getUpdateBackwardCount()
+	{
+		return UPDATE_BACKWARD.getCount();
+	}
+
+	@Override
+	public long getUpdateBackwardP50Micros()
+	{
+		return UPDATE_BACKWARD.getPercentile(50) / 1000;
+	}
+
+	@Override
+	public long getUpdateBackwardP99Micros()
+	{
+		return UPDATE_BACKWARD.getPercentile(99) / 1000;
+	}
+
+	@Override
+	public long getUpdateBackwardMaxMicros()
+	{
+		return UPDATE_BACKWARD.getMax() / 1000;
+	}
+
+	@Override
+	public long getNativeTranslateCount()
+	{
+		return NATIVE_TRANSLATE.getCount();
+	}
+
+	@Override
+	public long getNativeTranslateP50Micros()
+	{
+		return NATIVE_TRANSLATE.getPercentile(50) / 1000;
+	}
+
+	@Override
+	public long getNativeTranslateP99Micros()
+	{
+		return NATIVE_TRANSLATE.getPercentile(99) / 1000;
+	}
+
+	@Override
+	public long getNativeTranslateMaxMicros()
+	{
+		return NATIVE_TRANSLATE.getMax() / 1000;
+	}
+
+	@Override
+	public long getLinesPerEditP50()
+	{
+		return LINES_PER_EDIT.getPercentile(50);
+	}
+
+	@Override
+	public long getLinesPerEditP99()
+	{
+		return LINES_PER_EDIT.getPercentile(99);
+	}
+
+	@Override
+	public long getLinesPerEditMax()
+	{
+		return LINES_PER_EDIT.getMax();
+	}
+
+	@Override
+	public long getLinesTranslated()
+	{
+		return LINES_TRANSLATED.get();
+	}
+
+	@Override
+	public long getNativeCharsIn()
+	{
+		return NATIVE_CHARS_IN.get();
+	}
+
+	@Override
+	public long getNativeCharsOut()
+	{
+		return NATIVE_CHARS_OUT.get();
+	}
+
+	@Override
+	public long getCacheHits()
+	{
+		return CACHE_HITS.get();
+	}
+
+	@Override
+	public long getCacheMisses()
+	{
+		return CACHE_MISSES.get();
+	}
+
+	@Override
+	public double getCacheHitRate()
+	{
+		long hits = CACHE_HITS.get();
+		long total = hits + CACHE_MISSES.get();
+		if(total == 0)
+			return 0;
+		return (double)hits / total;
+	}
+}
@@ -0,0 +1,58 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * Translation and editing metrics of a running instance, registered as
+ * <code>org.aph.braillejanus:type=Metrics</code>.  Latencies are in
+ * microseconds.
+ * </p>
+ */
+public interface MetricsMXBean
+{
+	long getReplaceTextRangeCount();
+	long getReplaceTextRangeP50Micros();
+	long getReplaceTextRangeP99Micros();
+	long getReplaceTextRangeMaxMicros();
+
+	long getUpdateForwardCount();
+	long getUpdateForwardP50Micros();
+	long getUpdateForwardP99Micros();
+	long getUpdateForwardMaxMicros();
+
+	long getUpdateBackwardCount();
+	long getUpdateBackwardP50Micros();
+	long getUpdateBackwardP99Micros();
+	long getUpdateBackwardMaxMicros();
+
+	long getNativeTranslateCount();
+	long getNativeTranslateP50Micros();
+	long getNativeTranslateP99Micros();
+	long getNativeTranslateMaxMicros();
+
+	long getLinesPerEditP50();
+	long getLinesPerEditP99();
+	long getLinesPerEditMax();
+
+	long getLinesTranslated();
+	long getNativeCharsIn();
+	long getNativeCharsOut();
+
+	long getCacheHits();
+	long getCacheMisses();
+	double getCacheHitRate();
+}
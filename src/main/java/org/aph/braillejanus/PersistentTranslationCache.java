@@ -0,0 +1,542 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.aph.liblouisaph.LibLouisAPH;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Keeps translations on disk between sessions, in front of another
+ * {@link Translator}.  The file is memory mapped and only ever appended
+ * to; an index of hashes of the keys to record offsets is rebuilt from it
+ * when it is opened.  Keys are the table, direction and input text, and
+ * the file starts with the LibLouisAPH version, so the whole file is
+ * discarded when the library, and with it its tables, changes.
+ * </p><p>
+ * Records that have been replaced, and once the file reaches its maximum
+ * length records not used this session, are dropped by compacting into a
+ * new file on a background thread.  Translation continues during
+ * compaction, only switching to the new file holds the lock.  Each
+ * compaction writes the next generation, <code>BrailleJanus.cache.1</code>
+ * and so on, as a file that is still mapped can not be replaced or deleted
+ * on Windows.  When opened, the newest whole generation is used and the
+ * others are deleted.
+ * </p><p>
+ * Each record is the key length, the value length, then the key and
+ * value in UTF-8.  The key length is written last, so a record cut short
+ * by a crash reads as the end of the file.  A separate lock file is
+ * locked while open, so a second instance runs without the cache.
+ * </p>
+ */
+final class PersistentTranslationCache implements Translator
+{
+	static final long DEFAULT_MAX_LENGTH = 0x4000000;
+
+	private static final int MAGIC = 0x424a5443;
+	private static final int FORMAT = 1;
+	private static final int INITIAL_LENGTH = 0x100000;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Translator translator;
+	private final File file;
+	private final long maxLength;
+
+	private FileChannel lockChannel, channel;
+	private MappedByteBuffer buffer;
+	private int generation, headerLength, end, dead;
+	private HashMap<Long, Entry> index = new HashMap<>();
+	private boolean opened, compacting;
+
+	PersistentTranslationCache(Translator translator, File file, long maxLength)
+	{
+		this.translator = translator;
+		this.file = file;
+		this.maxLength = Math.min(maxLength, Integer.MAX_VALUE);
+	}
+
+	private static final class Entry
+	{
+		final int offset;
+		boolean used;
+
+		Entry(int offset, boolean used)
+		{
+			this.offset = offset;
+			this.used = used;
+		}
+	}
+
+	static File getDefaultFile()
+	{
+		String fileName = System.getProperty("user.home") + File.separator;
+		if(Settings.OS_NAME.startsWith("windows"))
+			fileName += "AppData" + File.separator + "Local" + File.separator + "BrailleJanus.cache";
+		else
+			fileName += ".braillejanus.cache";
+		return new File(fileName);
+	}
+
+	@Override
+	public String translate(String table, boolean forward, String text)
+	{
+		String key = table + (forward ? '>' : '<') + text;
+		long hash = getHash(key);
+		synchronized(this)
+		{
+			open();
+			String result = get(hash, key);
+			if(result != null)
+				return result;
+		}
+
+		String result = translator.translate(table, forward, text);
+		if(result != null)
+			synchronized(this)
+			{
+				put(hash, key, result);
+			}
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Writes the file out and closes it.  Translations after this go
+	 * straight to the underlying translator.
+	 * </p>
+	 */
+	synchronized void close()
+	{
+		opened = true;
+		if(buffer != null)
+			buffer.force();
+		buffer = null;
+		index = new HashMap<>();
+		try
+		{
+			if(channel != null)
+				channel.close();
+			if(lockChannel != null)
+				lockChannel.close();
+		}
+		catch(IOException exception)
+		{
+			Log.message(Log.LOG_WARNING, exception, false);
+		}
+		channel = null;
+		lockChannel = null;
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Opens the file the first time it is needed, when LibLouisAPH is
+	 * known to be loaded.  On failure the cache is left closed.
+	 * </p>
+	 */
+	private void open()
+	{
+		if(opened)
+			return;
+		opened = true;
+
+		try
+		{
+			byte version[] = LibLouisAPH.getVersion().getBytes(UTF_8);
+			headerLength = 10 + version.length;
+
+			lockChannel = FileChannel.open(new File(file.getPath() + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			if(lockChannel.tryLock() == null)
+			{
+				Log.message(Log.LOG_INFO, "Translation cache " + file.getPath() + " is in use by another instance", false);
+				close();
+				return;
+			}
+
+			//   older generations are left when the old file was still mapped, or by a crash
+			ArrayList<Integer> generations = getGenerations();
+			boolean whole = false;
+			generation = generations.isEmpty() ? 0 : generations.get(0);
+			for(int g : generations)
+				if(hasHeader(getFile(g), version))
+				{
+					generation = g;
+					whole = true;
+					break;
+				}
+			for(int g : generations)
+				if(g != generation)
+					getFile(g).delete();
+
+			channel = FileChannel.open(getFile(generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long length = channel.size();
+			if(!whole || length > maxLength)
+				length = 0;
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(length, Math.min(INITIAL_LENGTH, maxLength)));
+
+			if(length > 0)
+			{
+				readIndex();
+				return;
+			}
+
+			//   new file, or from another version
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, FORMAT);
+			buffer.putShort(8, (short)version.length);
+			for(int i = 0; i < version.length; i++)
+				buffer.put(10 + i, version[i]);
+			buffer.putInt(headerLength, 0);
+			end = headerLength;
+			dead = 0;
+			index.clear();
+		}
+		catch(IOException | RuntimeException exception)
+		{
+			Log.message(Log.LOG_WARNING, "Unable to open translation cache " + file.getPath() + ":  " + exception.getMessage(), false);
+			close();
+		}
+	}
+
+	private File getFile(int generation)
+	{
+		if(generation == 0)
+			return file;
+		return new File(file.getPath() + "." + generation);
+	}
+
+	/**
+	 * <p>
+	 * Returns the generations of the file that exist, newest first.
+	 * </p>
+	 */
+	private ArrayList<Integer> getGenerations()
+	{
+		ArrayList<Integer> generations = new ArrayList<>();
+		File directory = file.getAbsoluteFile().getParentFile();
+		String names[] = directory == null ? null : directory.list();
+		if(names == null)
+			return generations;
+
+		String prefix = file.getName() + ".";
+		for(String name : names)
+			if(name.equals(file.getName()))
+				generations.add(0);
+			else if(name.startsWith(prefix))
+				try
+				{
+					int generation = Integer.parseInt(name.substring(prefix.length()));
+					if(generation > 0)
+						generations.add(generation);
+				}
+				catch(NumberFormatException ignored)
+				{
+				}
+		Collections.sort(generations, Collections.<Integer>reverseOrder());
+		return generations;
+	}
+
+	/**
+	 * <p>
+	 * Returns whether <code>file</code> starts with a whole header for
+	 * <code>version</code>.  It is read without mapping, so that files not
+	 * used can be deleted.
+	 * </p>
+	 */
+	private boolean hasHeader(File file, byte version[])
+	{
+		try(FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			ByteBuffer header = ByteBuffer.allocate(headerLength);
+			while(header.hasRemaining())
+				if(fileChannel.read(header) < 0)
+					return false;
+
+			if(header.getInt(0) != MAGIC || header.getInt(4) != FORMAT || header.getShort(8) != version.length)
+				return false;
+			for(int i = 0; i < version.length; i++)
+				if(header.get(10 + i) != version[i])
+					return false;
+			return true;
+		}
+		catch(IOException exception)
+		{
+			return false;
+		}
+	}
+
+	private void readIndex()
+	{
+		end = headerLength;
+		while(end + 8 <= buffer.capacity())
+		{
+			int keyLength = buffer.getInt(end);
+			int valueLength = buffer.getInt(end + 4);
+			if(keyLength <= 0 || valueLength < 0 || end + 8L + keyLength + valueLength > buffer.capacity())
+				break;
+			Entry previous = index.put(getHash(getString(buffer, end + 8, keyLength)), new Entry(end, false));
+			if(previous != null)
+				dead += getRecordLength(buffer, previous.offset);
+			end += 8 + keyLength + valueLength;
+		}
+	}
+
+	private String get(long hash, String key)
+	{
+		if(buffer == null)
+			return null;
+		Entry entry = index.get(hash);
+		if(entry == null)
+			return null;
+
+		int keyLength = buffer.getInt(entry.offset);
+		if(!getString(buffer, entry.offset + 8, keyLength).equals(key))
+			return null;
+		entry.used = true;
+		return getString(buffer, entry.offset + 8 + keyLength, buffer.getInt(entry.offset + 4));
+	}
+
+	private void put(long hash, String key, String value)
+	{
+		if(buffer == null)
+			return;
+
+		byte keyBytes[] = key.getBytes(UTF_8);
+		byte valueBytes[] = value.getBytes(UTF_8);
+		int recordLength = 8 + keyBytes.length + valueBytes.length;
+
+		//   keep room for the terminating zero key length
+		if((long)end + recordLength + 4 > buffer.capacity())
+		{
+			long length = Math.min(Math.max((long)buffer.capacity() * 2, end + recordLength + 4L), maxLength);
+			if(length < end + recordLength + 4L)
+			{
+				compact();
+				return;
+			}
+			try
+			{
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			}
+			catch(IOException exception)
+			{
+				Log.message(Log.LOG_WARNING, exception, false);
+				close();
+				return;
+			}
+		}
+
+		writeRecord(buffer, end, keyBytes, valueBytes);
+		Entry previous = index.put(hash, new Entry(end, true));
+		if(previous != null)
+			dead += getRecordLength(buffer, previous.offset);
+		end += recordLength;
+
+		if(dead > (end - headerLength) / 2)
+			compact();
+	}
+
+	private static void writeRecord(ByteBuffer buffer, int offset, byte key[], byte value[])
+	{
+		int position = offset + 8;
+		for(byte b : key)
+			buffer.put(position++, b);
+		for(byte b : value)
+			buffer.put(position++, b);
+		buffer.putInt(position, 0);
+		buffer.putInt(offset + 4, value.length);
+		buffer.putInt(offset, key.length);
+	}
+
+	private static int getRecordLength(ByteBuffer buffer, int offset)
+	{
+		return 8 + buffer.getInt(offset) + buffer.getInt(offset + 4);
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer, int offset, int length)
+	{
+		byte bytes[] = new byte[length];
+		for(int i = 0; i < length; i++)
+			bytes[i] = buffer.get(offset + i);
+		return bytes;
+	}
+
+	private static String getString(ByteBuffer buffer, int offset, int length)
+	{
+		return new String(getBytes(buffer, offset, length), UTF_8);
+	}
+
+	/**
+	 * <p>
+	 * Returns the 64 bit FNV-1a hash of <code>key</code>.
+	 * </p>
+	 */
+	private static long getHash(String key)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++)
+		{
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Starts compacting on a background thread, unless already compacting.
+	 * If the file is full, only records used this session are kept.
+	 * </p>
+	 */
+	private void compact()
+	{
+		if(compacting)
+			return;
+		compacting = true;
+
+		final boolean full = end + (long)INITIAL_LENGTH > maxLength;
+		final ByteBuffer source = buffer.duplicate();
+		final int sourceEnd = end;
+		final int newGeneration = generation + 1;
+		final ArrayList<Map.Entry<Long, Entry>> entries = new ArrayList<>(index.size());
+		for(Map.Entry<Long, Entry> entry : index.entrySet())
+			if(!full || entry.getValue().used)
+				entries.add(new HashMap.SimpleEntry<>(entry.getKey(), new Entry(entry.getValue().offset, entry.getValue().used)));
+
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				compact(source, sourceEnd, entries, newGeneration);
+			}
+		}, "BrailleJanus-cache-compaction");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void compact(ByteBuffer source, int sourceEnd, ArrayList<Map.Entry<Long, Entry>> entries, int newGeneration)
+	{
+		File newFile = getFile(newGeneration);
+		FileChannel newChannel = null;
+		try
+		{
+			newChannel = FileChannel.open(newFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+			//   the magic number is written last, so a file cut short by a crash is not used
+			byte header[] = getBytes(source, 0, headerLength);
+			for(int i = 0; i < 4; i++)
+				header[i] = 0;
+			writeFully(newChannel, header);
+
+			//   records before sourceEnd are never written again, so are copied without the lock
+			HashMap<Long, Entry> newIndex = new HashMap<>(entries.size() * 2);
+			int newEnd = headerLength;
+			for(Map.Entry<Long, Entry> entry : entries)
+			{
+				newIndex.put(entry.getKey(), new Entry(newEnd, entry.getValue().used));
+				newEnd += copyRecord(source, entry.getValue().offset, newChannel);
+			}
+
+			synchronized(this)
+			{
+				if(buffer == null)
+					return;
+
+				//   records added since compaction started
+				for(Map.Entry<Long, Entry> entry : index.entrySet())
+					if(entry.getValue().offset >= sourceEnd)
+					{
+						newIndex.put(entry.getKey(), new Entry(newEnd, entry.getValue().used));
+						newEnd += copyRecord(buffer, entry.getValue().offset, newChannel);
+					}
+				newChannel.write(ByteBuffer.allocate(4), newEnd);
+				newChannel.force(true);
+				ByteBuffer magic = ByteBuffer.allocate(4);
+				magic.putInt(0, MAGIC);
+				newChannel.write(magic, 0);
+				newChannel.force(true);
+
+				//   the old file stays mapped until its buffer is collected, so on
+				//   Windows it may only be deleted the next time the cache is opened
+				MappedByteBuffer newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Math.max((long)newEnd * 2, INITIAL_LENGTH), maxLength));
+				channel.close();
+				File oldFile = getFile(generation);
+				channel = newChannel;
+				newChannel = null;
+				buffer = newBuffer;
+				generation = newGeneration;
+				index = newIndex;
+				end = newEnd;
+				dead = 0;
+				oldFile.delete();
+			}
+		}
+		catch(IOException exception)
+		{
+			Log.message(Log.LOG_WARNING, "Unable to compact translation cache " + file.getPath() + ":  " + exception.getMessage(), false);
+			close();
+		}
+		finally
+		{
+			synchronized(this)
+			{
+				compacting = false;
+			}
+			if(newChannel != null)
+			{
+				try
+				{
+					newChannel.close();
+				}
+				catch(IOException exception)
+				{
+					Log.message(Log.LOG_WARNING, exception, false);
+				}
+				newFile.delete();
+			}
+		}
+	}
+
+	private static int copyRecord(ByteBuffer source, int offset, FileChannel channel) throws IOException
+	{
+		int length = getRecordLength(source, offset);
+		writeFully(channel, getBytes(source, offset, length));
+		return length;
+	}
+
+	private static void writeFully(FileChannel channel, byte bytes[]) throws IOException
+	{
+		ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+		while(byteBuffer.hasRemaining())
+			channel.write(byteBuffer);
+	}
+}
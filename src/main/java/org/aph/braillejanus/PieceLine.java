@@ -0,0 +1,291 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.util.ArrayList;
+
+/**
+ * <p>
+ * A line made of pieces of other, unchanging character sequences, such
+ * as the {@link AddBuffer}, a mapped file or the line it was before an
+ * edit.  Lines are never changed; an edit builds a new line from pieces of
+ * the old one and of the inserted text, so no text is copied.
+ * </p><p>
+ * Lines of one piece are a {@link Span}.  A line with more than
+ * MAX_PIECES pieces is copied into a single String, so reading a
+ * character never has to search many pieces.
+ * </p>
+ */
+final class PieceLine implements CharSequence
+{
+	private static final int MAX_PIECES = 0x10;
+
+	private final Span pieces[];
+
+	//   offset in the line of each piece
+	private final int offsets[];
+
+	private final int length;
+
+	private PieceLine(Span pieces[], int offsets[], int length)
+	{
+		this.pieces = pieces;
+		this.offsets = offsets;
+		this.length = length;
+	}
+
+	/**
+	 * <p>
+	 * Returns <code>line</code> with the text from <code>start</code> to
+	 * <code>end</code> replaced with <code>text</code>.
+	 * </p>
+	 */
+	static CharSequence replace(CharSequence line, int start, int end, CharSequence text)
+	{
+		Builder builder = new Builder();
+		builder.add(line, 0, start);
+		builder.add(text, 0, text.length());
+		builder.add(line, end, line.length());
+		return builder.build();
+	}
+
+	/**
+	 * <p>
+	 * Returns the characters of <code>line</code> from <code>start</code>
+	 * to <code>end</code>.
+	 * </p>
+	 */
+	static CharSequence sub(CharSequence line, int start, int end)
+	{
+		Builder builder = new Builder();
+		builder.add(line, start, end);
+		return builder.build();
+	}
+
+	/**
+	 * <p>
+	 * Appends the characters of <code>line</code> from <code>start</code>
+	 * to <code>end</code>, without copying them into a String first.
+	 * </p>
+	 */
+	static void append(StringBuilder builder, CharSequence line, int start, int end)
+	{
+		if(line instanceof PieceLine)
+		{
+			PieceLine pieceLine = (PieceLine)line;
+			for(int i = pieceLine.find(start); i < pieceLine.pieces.length && pieceLine.offsets[i] < end; i++)
+			{
+				Span span = pieceLine.pieces[i];
+				int offset = pieceLine.offsets[i];
+				append(builder, span, Math.max(start - offset, 0), Math.min(end - offset, span.length()));
+			}
+		}
+		else if(line instanceof Span)
+		{
+			Span span = (Span)line;
+			if(span.source instanceof AddBuffer.Chunk)
+				builder.append(((AddBuffer.Chunk)span.source).chars, span.start + start, end - start);
+			else
+				builder.append(span.source, span.start + start, span.start + end);
+		}
+		else
+			builder.append(line, start, end);
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if(index < 0 || index >= length)
+			throw new StringIndexOutOfBoundsException(index);
+		int i = find(index);
+		return pieces[i].charAt(index - offsets[i]);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		StringBuilder builder = new StringBuilder(end - start);
+		append(builder, this, start, end);
+		return builder.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return (String)subSequence(0, length);
+	}
+
+	/**
+	 * <p>
+	 * Returns the index of the piece containing <code>offset</code>.
+	 * </p>
+	 */
+	private int find(int offset)
+	{
+		int low = 0, high = pieces.length - 1;
+		while(low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			if(offsets[middle] <= offset)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Characters <code>start</code> to <code>end</code> of an unchanging
+	 * source.
+	 * </p>
+	 */
+	static final class Span implements CharSequence
+	{
+		final CharSequence source;
+		final int start, end;
+
+		Span(CharSequence source, int start, int end)
+		{
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length()
+		{
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			return source.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end)
+		{
+			StringBuilder builder = new StringBuilder(end - start);
+			append(builder, this, start, end);
+			return builder.toString();
+		}
+
+		@Override
+		public String toString()
+		{
+			return (String)subSequence(0, length());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Collects pieces for a new line, joining pieces that are next to each
+	 * other in the same source.
+	 * </p>
+	 */
+	static final class Builder
+	{
+		private final ArrayList<Span> pieces = new ArrayList<>(3);
+		private int length;
+
+		/**
+		 * <p>
+		 * Adds the characters of <code>line</code> from <code>start</code> to
+		 * <code>end</code>.
+		 * </p>
+		 */
+		void add(CharSequence line, int start, int end)
+		{
+			if(start >= end)
+				return;
+
+			if(line instanceof PieceLine)
+			{
+				PieceLine pieceLine = (PieceLine)line;
+				for(int i = pieceLine.find(start); i < pieceLine.pieces.length && pieceLine.offsets[i] < end; i++)
+				{
+					Span span = pieceLine.pieces[i];
+					int offset = pieceLine.offsets[i];
+					add(span, Math.max(start - offset, 0), Math.min(end - offset, span.length()));
+				}
+			}
+			else if(line instanceof Span)
+			{
+				Span span = (Span)line;
+				addPiece(span.source, span.start + start, span.start + end);
+			}
+			else
+				addPiece(line, start, end);
+		}
+
+		private void addPiece(CharSequence source, int start, int end)
+		{
+			length += end - start;
+			if(!pieces.isEmpty())
+			{
+				Span last = pieces.get(pieces.size() - 1);
+				if(last.source == source && last.end == start)
+				{
+					pieces.set(pieces.size() - 1, new Span(source, last.start, end));
+					return;
+				}
+			}
+			pieces.add(new Span(source, start, end));
+		}
+
+		CharSequence build()
+		{
+			if(pieces.isEmpty())
+				return "";
+
+			if(pieces.size() == 1)
+			{
+				//   all of an unchanging source needs no piece
+				Span span = pieces.get(0);
+				if(span.start == 0 && span.end == span.source.length() && !(span.source instanceof AddBuffer.Chunk))
+					return span.source;
+				return span;
+			}
+
+			if(pieces.size() > MAX_PIECES)
+			{
+				StringBuilder builder = new StringBuilder(length);
+				for(Span span : pieces)
+					append(builder, span, 0, span.length());
+				return builder.toString();
+			}
+
+			int offsets[] = new int[pieces.size()];
+			int offset = 0;
+			for(int i = 0; i < offsets.length; i++)
+			{
+				offsets[i] = offset;
+				offset += pieces.get(i).length();
+			}
+			return new PieceLine(pieces.toArray(new Span[pieces.size()]), offsets, length);
+		}
+	}
+}
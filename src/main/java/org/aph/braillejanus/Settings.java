@@ -32,6 +32,8 @@ public class Settings
 	private final File file;
 
 	private String version;
+	private boolean persistentCache;
+	private long persistentCacheLength = PersistentTranslationCache.DEFAULT_MAX_LENGTH;
 
 	Settings(Display display, String fileName)
 	{
@@ -64,6 +66,21 @@ public class Settings
 		return version;
 	}
 
+	/**
+	 * <p>
+	 * Returns whether translations are kept on disk between sessions.
+	 * </p>
+	 */
+	boolean getPersistentCache()
+	{
+		return persistentCache;
+	}
+
+	long getPersistentCacheLength()
+	{
+		return persistentCacheLength;
+	}
+
 	private boolean readLine(String line)
 	{
 		if(line.isEmpty())
@@ -87,6 +104,16 @@ public class Settings
 					Log.message(Log.LOG_WARNING, "Version " + value + " from settings file does not match " + version, false);
 			break;
 
+		case "persistentCache":  persistentCache = Boolean.parseBoolean(value);  break;
+
+		case "persistentCacheLength":
+
+			long length = Long.parseLong(value);
+			if(length < 0x100000)
+				throw new NumberFormatException();
+			persistentCacheLength = length;
+			break;
+
 		default:  return false;
 		}
 
@@ -152,6 +179,8 @@ public class Settings
 	{
 		if(version != null)
 			writer.println("version " + version);
+		writer.println("persistentCache " + persistentCache);
+		writer.println("persistentCacheLength " + persistentCacheLength);
 
 		writer.println();
 	}
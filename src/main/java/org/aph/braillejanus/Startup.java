@@ -0,0 +1,126 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.aph.liblouisaph.LibLouisAPH;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * <p>
+ * Loads LibLouisAPH and warms up a table on a background thread while the
+ * user interface is built, and times each phase of startup.  The warm-up
+ * translation makes the table compile before the first keystroke rather
+ * than during it.
+ * </p>
+ */
+final class Startup
+{
+	private static final String WARM_UP_TEXT = "warm up";
+
+	private final long startTime = System.nanoTime();
+	private long phaseTime = startTime;
+	private final StringBuilder phases = new StringBuilder(0x100);
+
+	private final CountDownLatch libraryLoaded = new CountDownLatch(1);
+	private volatile IOException libraryException;
+
+	/**
+	 * <p>
+	 * Records the time since the previous phase ended as the phase
+	 * <code>name</code>.  Only called from the main thread.
+	 * </p>
+	 */
+	void phase(String name)
+	{
+		long time = System.nanoTime();
+		if(phases.length() > 0)
+			phases.append(", ");
+		phases.append(name).append(' ').append((time - phaseTime) / 1000000).append(" ms");
+		phaseTime = time;
+	}
+
+	/**
+	 * <p>
+	 * Starts loading LibLouisAPH, then translating with <code>table</code>,
+	 * on a background thread.
+	 * </p>
+	 */
+	void loadLibrary(final String table)
+	{
+		Thread thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				long time = System.nanoTime();
+				try
+				{
+					LibLouisAPH.loadLibraryInternal();
+					LibLouisAPH.setInternalTablePath();
+				}
+				catch(IOException exception)
+				{
+					libraryException = exception;
+				}
+				catch(LinkageError error)
+				{
+					libraryException = new IOException("Unable to load LibLouisAPH:  " + error.getMessage(), error);
+				}
+				finally
+				{
+					libraryLoaded.countDown();
+				}
+				if(libraryException != null)
+					return;
+				long loadTime = System.nanoTime() - time;
+
+				time = System.nanoTime();
+				new LibLouisTranslator().translate(table, true, WARM_UP_TEXT);
+				Log.format(Log.LOG_INFO, "Startup in background:  native library %d ms, %s warm-up %d ms", loadTime / 1000000, table, (System.nanoTime() - time) / 1000000);
+			}
+		}, "BrailleJanus-startup");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * <p>
+	 * Waits for LibLouisAPH to be loaded, not for the warm-up translation.
+	 * </p>
+	 */
+	void awaitLibrary() throws IOException
+	{
+		try
+		{
+			libraryLoaded.await();
+		}
+		catch(InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading LibLouisAPH", exception);
+		}
+		phase("waiting for native library");
+		if(libraryException != null)
+			throw libraryException;
+	}
+
+	void log()
+	{
+		Log.format(Log.LOG_INFO, "Startup:  %s, total %d ms", phases, (System.nanoTime() - startTime) / 1000000);
+	}
+}
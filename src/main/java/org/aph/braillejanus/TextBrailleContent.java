@@ -15,19 +15,29 @@
 
 package org.aph.braillejanus;
 
-import org.aph.liblouisaph.LibLouisAPH;
 import org.eclipse.swt.custom.StyledTextContent;
 import org.eclipse.swt.custom.TextChangeListener;
 import org.eclipse.swt.custom.TextChangedEvent;
 import org.eclipse.swt.custom.TextChangingEvent;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 public class TextBrailleContent
 {
 	private static final String LINE_DELIMITER = System.getProperty("line.separator");
 
+	//   lines per translation job
+	private static final int TRANSLATION_CHUNK = 64;
+
+	//   lines above and below the visible lines to translate ahead
+	private static final int TRANSLATION_PREFETCH = 500;
+
 	@SuppressWarnings("ThisEscapedInObjectConstruction")
 	private final TextContent textContent = new TextContent(this);
 
@@ -37,14 +47,64 @@ public class TextBrailleContent
 	private final List<TextChangeListener> textChangeListeners = new ArrayList<>(3);
 	private final List<TextChangeListener> brailleChangeListeners = new ArrayList<>(3);
 
-	private final ArrayList<Node> textNodes = new ArrayList<>(100);
-	private final ArrayList<Node> brailleNodes = new ArrayList<>(100);
+	//   lines including their delimiters, which are never changed, only replaced
+	private final LineTree<CharSequence> textNodes = new LineTree<>();
+	private final LineTree<CharSequence> brailleNodes = new LineTree<>();
+
+	//   inserted text, which the lines of each pane refer to
+	private final AddBuffer textAddBuffer = new AddBuffer();
+	private final AddBuffer brailleAddBuffer = new AddBuffer();
+
+	//   lines waiting for translation, and lines whose counterpart in the other pane was removed
+	private final LineFlags textUpdate = new LineFlags();
+	private final LineFlags textDeleted = new LineFlags();
+	private final LineFlags brailleUpdate = new LineFlags();
+	private final LineFlags brailleDeleted = new LineFlags();
+
+	private final LineTranslator lineTranslator;
+	private TranslationExecutor translationExecutor;
+	private final ArrayList<TranslationExecutor.Job> translationJobs = new ArrayList<>();
+
+	//   first and last visible lines of the text and braille panes
+	private final int viewports[] = new int[4];
+
+	//   line changes made since the oldest submitted job was taken
+	private final ArrayList<int[]> lineEdits = new ArrayList<>();
+	private int lineEditsVersion;
+
+	//   lines of both panes as of the last whole edit, and edits made, see snapshot
+	private LineTree<CharSequence> publishedText, publishedBraille;
+	private long version;
+
+	//   held to publish the lines, which only the UI thread does
+	private final StampedLock lock = new StampedLock();
+
+	//   nesting of beginEdit, and the lines and changed regions of each pane since the outermost
+	private int editDepth;
+	private LineTree<CharSequence> textBefore, brailleBefore;
+	private final ArrayList<EditRegion> textEdits = new ArrayList<>();
+	private final ArrayList<EditRegion> brailleEdits = new ArrayList<>();
 
 	public TextBrailleContent()
 	{
+		this(new LibLouisTranslator());
+	}
+
+	/**
+	 * <p>
+	 * Creates content whose lines are translated by <code>translator</code>
+	 * with the default table, through a {@link TranslationCache}.
+	 * </p>
+	 */
+	public TextBrailleContent(Translator translator)
+	{
+		lineTranslator = new LineTranslator(LineTranslator.DEFAULT_TABLE, new TranslationCache(translator));
+
 		//   must be at least one always
-		textNodes.add(new Node());
-		brailleNodes.add(new Node());
+		textNodes.add(0, "");
+		brailleNodes.add(0, "");
+		publishedText = textNodes.copy();
+		publishedBraille = brailleNodes.copy();
 	}
 
 	////////////////////////////////////////
@@ -59,53 +119,236 @@ public class TextBrailleContent
 		return brailleContent;
 	}
 
-	////////////////////////////////////////
+	/**
+	 * <p>
+	 * Sets the executor used to translate edited lines off the UI thread.
+	 * When <code>null</code>, lines are translated before an edit returns.
+	 * </p>
+	 */
+	void setTranslationExecutor(TranslationExecutor translationExecutor)
+	{
+		this.translationExecutor = translationExecutor;
+	}
+
+	LineTranslator getLineTranslator()
+	{
+		return lineTranslator;
+	}
+
+	/**
+	 * <p>
+	 * Sets the lines visible in a pane.  Lines waiting for translation are
+	 * translated nearest the visible lines first, and only up to
+	 * TRANSLATION_PREFETCH lines away from them.
+	 * </p>
+	 */
+	void setViewport(boolean braille, int lineTop, int lineBottom)
+	{
+		int index = braille ? 2 : 0;
+		if(viewports[index] == lineTop && viewports[index + 1] == lineBottom)
+			return;
+		viewports[index] = lineTop;
+		viewports[index + 1] = lineBottom;
+		translatePending();
+	}
+
+	/**
+	 * <p>
+	 * Starts batching replacements.  Until the matching
+	 * {@link #commitEdit()}, replacements are applied without notifying
+	 * listeners, then each pane that changed gets a change event for each
+	 * run of changed lines.  Calls may be nested.
+	 * </p>
+	 */
+	public void beginEdit()
+	{
+		if(editDepth++ > 0)
+			return;
+		textBefore = textNodes.copy();
+		brailleBefore = brailleNodes.copy();
+	}
 
-	private static class Node
+	/**
+	 * <p>
+	 * Ends batching replacements started by {@link #beginEdit()}.
+	 * </p>
+	 */
+	public void commitEdit()
 	{
-		StringBuilder text = new StringBuilder("");
-		int offset;
-		volatile boolean update, deleted;
+		if(editDepth <= 0)
+			throw new IllegalStateException("commitEdit without beginEdit");
+		if(--editDepth > 0)
+			return;
 
-		Node(){}
+		commitEdit(textChangeListeners, textContent, textNodes, textBefore, textEdits);
+		commitEdit(brailleChangeListeners, brailleContent, brailleNodes, brailleBefore, brailleEdits);
+		textBefore = null;
+		brailleBefore = null;
+		publish();
+	}
+
+	/**
+	 * <p>
+	 * Returns an immutable view of both panes as of the last whole edit.
+	 * It is made in constant time, by sharing lines with this content, and
+	 * may be read from any thread without locking while this content keeps
+	 * changing.  An edit is whole once the other pane is realigned with the
+	 * pane that was replaced, so the panes of a snapshot always have the
+	 * same line count.  Between {@link #beginEdit()} and
+	 * {@link #commitEdit()} no replacements are included.
+	 * </p><p>
+	 * This is the only method that may be called from other threads.  It
+	 * reads optimistically, and only waits for the read lock if an edit
+	 * was published while reading.  It may also be called from a listener.
+	 * </p>
+	 */
+	public TextBrailleSnapshot snapshot()
+	{
+		long stamp = lock.tryOptimisticRead();
+		TextBrailleSnapshot snapshot = new TextBrailleSnapshot(version, publishedText, publishedBraille);
+		if(lock.validate(stamp))
+			return snapshot;
 
-		Node(String text)
+		stamp = lock.readLock();
+		try
 		{
-			this.text = new StringBuilder(text);
+			return new TextBrailleSnapshot(version, publishedText, publishedBraille);
 		}
+		finally
+		{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Makes the lines of both panes those returned by {@link #snapshot()},
+	 * unless an edit is still being batched.  Called once at the end of
+	 * each whole edit.
+	 * </p>
+	 */
+	private void publish()
+	{
+		if(editDepth > 0)
+			return;
 
-		public String toString()
+		long stamp = lock.writeLock();
+		try
 		{
-			StringBuilder stringBuilder = new StringBuilder(" " + text);
-			if(deleted)
-				stringBuilder.insert(0, '+');
-			else
-				stringBuilder.insert(0, '-');
-			if(update)
-				stringBuilder.insert(0, '+');
-			else
-				stringBuilder.insert(0, '-');
-			stringBuilder.insert(0, "[" + offset + ']');
-			return stringBuilder.toString();
+			version++;
+			publishedText = textNodes.copy();
+			publishedBraille = brailleNodes.copy();
 		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Sets the text to the contents of <code>file</code>, which is memory
+	 * mapped instead of read, so only lines that are changed are copied to
+	 * the heap.  The braille is translated as for any other change.  Must
+	 * not be called between {@link #beginEdit()} and
+	 * {@link #commitEdit()}.
+	 * </p>
+	 */
+	public void setTextFile(File file) throws IOException
+	{
+		if(editDepth > 0)
+			throw new IllegalStateException("setTextFile during an edit");
+
+		MappedText mappedText = new MappedText(file, LINE_DELIMITER);
+		int lineCount = mappedText.getLineCount();
+
+		//   results of jobs already submitted are for the old lines
+		lineEdits.add(new int[]{ 0, textNodes.size() - 1, lineCount - 1 });
+
+		textNodes.setAll(mappedText, lineCount);
+
+		//   empty until translated
+		brailleNodes.setAll(new EmptyLines(lineCount), lineCount);
+		textUpdate.clear();
+		textDeleted.clear();
+		brailleUpdate.clear();
+		brailleDeleted.clear();
+		brailleUpdate.set(0, true);
+
+		fireTextSet(textChangeListeners, textContent);
+		fireTextSet(brailleChangeListeners, brailleContent);
+
+		TextRange textRange = new TextRange(0, getCharCount(textNodes), 0, lineCount - 1);
+		TextRange brailleRange = new TextRange(0, getCharCount(brailleNodes), 0, lineCount - 1);
+		updateForward(new TextRange[]{ textRange,brailleRange });
+		publish();
+	}
+
+	////////////////////////////////////////
+
+	private LineFlags getUpdate(LineTree<CharSequence> nodes)
+	{
+		if(nodes == textNodes)
+			return textUpdate;
+		return brailleUpdate;
+	}
+
+	private LineFlags getDeleted(LineTree<CharSequence> nodes)
+	{
+		if(nodes == textNodes)
+			return textDeleted;
+		return brailleDeleted;
+	}
+
+	/**
+	 * <p>
+	 * Moves the flags of lines after <code>count</code> lines were added at
+	 * <code>index</code>.
+	 * </p>
+	 */
+	private void nodesAdded(LineTree<CharSequence> nodes, int index, int count)
+	{
+		getUpdate(nodes).insert(index, count);
+		getDeleted(nodes).insert(index, count);
+	}
+
+	private void nodesRemoved(LineTree<CharSequence> nodes, int index, int count)
+	{
+		getUpdate(nodes).remove(index, count);
+		getDeleted(nodes).remove(index, count);
 	}
 
-	private void nodesResetOffsetsAt(ArrayList<Node> nodes, int index)
+	/**
+	 * <p>
+	 * Replaces the line at <code>index</code> and clears its flags.
+	 * </p>
+	 */
+	private void nodesSet(LineTree<CharSequence> nodes, int index, CharSequence line)
 	{
 		if(index < 0)
 			index = 0;
-		Node crs = nodes.get(index);
-		crs.update = crs.deleted = false;
-		for(int i = index + 1; i < nodes.size(); i++)
-		{
-			Node nxt = nodes.get(i);
-			nxt.offset = crs.offset + crs.text.length();
-			nxt.update = nxt.deleted = false;
-			crs = nxt;
-		}
+		getUpdate(nodes).set(index, false);
+		getDeleted(nodes).set(index, false);
+		nodes.set(index, nodesNew(nodes, line));
 	}
 
-	private void nodesDelete(ArrayList<Node> nodes, ArrayList<Node> others, int start, int length)
+	/**
+	 * <p>
+	 * Returns <code>line</code> ready to be stored in <code>nodes</code>,
+	 * where braille lines are stored as cells.
+	 * </p>
+	 */
+	private CharSequence nodesNew(LineTree<CharSequence> nodes, CharSequence line)
+	{
+		if(nodes != brailleNodes || line instanceof BrailleLine || line.length() <= LINE_DELIMITER.length())
+			return line;
+		BrailleLine brailleLine = BrailleLine.valueOf(line, LINE_DELIMITER);
+		if(brailleLine != null)
+			return brailleLine;
+		return line;
+	}
+
+	private void nodesDelete(LineTree<CharSequence> nodes, LineTree<CharSequence> others, int start, int length)
 	{
 		if(length <= 0)
 			return;
@@ -116,105 +359,103 @@ public class TextBrailleContent
 		//   all in one line
 		if(indexStart == indexFinish)
 		{
-			Node node = nodes.get(indexStart);
-			start -= node.offset;
-			node.text.delete(start, start + length);
-			nodesResetOffsetsAt(nodes, indexStart);
+			start -= nodes.getOffset(indexStart);
+			nodesSet(nodes, indexStart, PieceLine.replace(nodes.get(indexStart), start, start + length, ""));
 
 			if(others != null)
-			{
-				node = others.get(indexStart);
-				node.update = true;
-			}
+				getUpdate(others).set(indexStart, true);
 
 			return;
 		}
 
 		//   remove in-between textNodes
 		for(int i = indexStart + 1; i < indexFinish; i++)
-		{
-			Node node = nodes.get(indexStart + 1);
-			length -= node.text.length();
-			nodes.remove(indexStart + 1);
-
-			if(others != null)
-			{
-				node = others.get(i);
-				node.deleted = true;
-			}
-		}
+			length -= nodes.remove(indexStart + 1).length();
+		if(others != null)
+			getDeleted(others).set(indexStart + 1, indexFinish, true);
 
-		Node nodeStart = nodes.get(indexStart);
-		Node nodeFinish = nodes.get(indexStart + 1);
-		int offsetStart = start - nodeStart.offset;
-		int offsetFinish = length - (nodeStart.text.length() - offsetStart);
+		CharSequence lineStart = nodes.get(indexStart);
+		CharSequence lineFinish = nodes.get(indexStart + 1);
+		int offsetStart = start - nodes.getOffset(indexStart);
+		int offsetFinish = length - (lineStart.length() - offsetStart);
 
-		nodeStart.text.delete(offsetStart, nodeStart.text.length());
-		nodeStart.text.append(nodeFinish.text.substring(offsetFinish, nodeFinish.text.length()));
+		PieceLine.Builder builder = new PieceLine.Builder();
+		builder.add(lineStart, 0, offsetStart);
+		builder.add(lineFinish, offsetFinish, lineFinish.length());
 		nodes.remove(indexStart + 1);
-		nodesResetOffsetsAt(nodes, indexStart - 1);
+		nodesRemoved(nodes, indexStart + 1, indexFinish - indexStart);
+		nodesSet(nodes, indexStart, builder.build());
 
 		if(others != null)
 		{
-			Node node = others.get(indexStart);
-			node.update = true;
-			node = others.get(indexFinish);
-			node.deleted = true;
+			getUpdate(others).set(indexStart, true);
+			getDeleted(others).set(indexFinish, true);
 		}
 	}
 
-	private void nodesInsert(ArrayList<Node> nodes, ArrayList<Node> others, StringBuilder lines[], String text, int offset)
+	private void nodesReplace(LineTree<CharSequence> nodes, LineTree<CharSequence> others, int start, int length, int lineEnds[], String text)
+	{
+		nodesDelete(nodes, others, start, length);
+		nodesInsert(nodes, others, lineEnds, text, start);
+	}
+
+	/**
+	 * <p>
+	 * Inserts <code>text</code>, whose lines end at <code>lineEnds</code>,
+	 * or <code>null</code> if it has no line delimiter.  The text is added
+	 * to the add buffer once, and every line refers to its part of it.
+	 * </p>
+	 */
+	private void nodesInsert(LineTree<CharSequence> nodes, LineTree<CharSequence> others, int lineEnds[], String text, int offset)
 	{
 		if(text.length() < 1)
 			return;
 
 		int index = getLineAtOffset(nodes, offset);
-		Node node = nodes.get(index);
-		offset -= node.offset;
-		String after = node.text.substring(offset);
+		offset -= nodes.getOffset(index);
+		CharSequence line = nodes.get(index);
+		CharSequence added = (nodes == textNodes ? textAddBuffer : brailleAddBuffer).append(text);
 
-		if(lines == null)
+		if(lineEnds == null)
 		{
-			node.text.insert(offset, text);
+			nodesSet(nodes, index, PieceLine.replace(line, offset, offset, added));
 
 			if(others != null)
-			{
-				node = others.get(index);
-				node.update = true;
-			}
+				getUpdate(others).set(index, true);
 		}
 		else
 		{
 			//   first line
-			node.text.delete(offset, node.text.length());
-			node.text.append(lines[0]);
+			PieceLine.Builder builder = new PieceLine.Builder();
+			builder.add(line, 0, offset);
+			builder.add(added, 0, lineEnds[0]);
+			CharSequence first = builder.build();
 			if(others != null)
-			{
-				node = others.get(index);
-				node.update = true;
-			}
+				getUpdate(others).set(index, true);
 
 			//   last line
-			int indexLast = lines.length - 1;
-			if(lines[lines.length - 1].indexOf(LINE_DELIMITER) < 0)
-			{
-				after = lines[lines.length - 1] + after;
-				indexLast = lines.length - 2;
-			}
-
-			if(index + 1 < nodes.size() && !after.contains(LINE_DELIMITER))
+			int indexLast = lineEnds.length - 1;
+			builder = new PieceLine.Builder();
+			if(!endsWithDelimiter(text))
 			{
-				node = nodes.get(index + 1);
-				node.text.insert(0, after);
+				indexLast = lineEnds.length - 2;
+				builder.add(added, lineEnds[indexLast], text.length());
 			}
+			builder.add(line, offset, line.length());
+			CharSequence after = builder.build();
+
+			ArrayList<CharSequence> lines = new ArrayList<>(indexLast + 1);
+			for(int i = 1; i <= indexLast; i++)
+				lines.add(nodesNew(nodes, PieceLine.sub(added, lineEnds[i - 1], lineEnds[i])));
+			if(index + 1 < nodes.size() && !endsWithDelimiter(after))
+				nodesSet(nodes, index + 1, PieceLine.replace(nodes.get(index + 1), 0, 0, after));
 			else
-				nodes.add(index + 1, new Node(after));
+				lines.add(nodesNew(nodes, after));
 
-			for(int i = indexLast; i > 0; i--)
-				nodes.add(index + 1, new Node(lines[i].toString()));
+			nodes.addAll(index + 1, lines);
+			nodesAdded(nodes, index + 1, lines.size());
+			nodesSet(nodes, index, first);
 		}
-
-		nodesResetOffsetsAt(nodes, index - 1);
 	}
 
 	////////////////////////////////////////
@@ -233,6 +474,58 @@ public class TextBrailleContent
 		}
 	}
 
+	/**
+	 * <p>
+	 * A part of a pane changed during an edit, from start to end in the
+	 * current text, and the text it replaced.
+	 * </p>
+	 */
+	private static class EditRegion
+	{
+		int start, end;
+		String oldText;
+
+		EditRegion(int start, int end, String oldText)
+		{
+			this.start = start;
+			this.end = end;
+			this.oldText = oldText;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Lines with only a line delimiter, but for the last, which is empty.
+	 * </p>
+	 */
+	private static class EmptyLines implements LineTree.Lines<CharSequence>
+	{
+		private final int lineCount;
+
+		EmptyLines(int lineCount)
+		{
+			this.lineCount = lineCount;
+		}
+
+		@Override
+		public CharSequence get(int index)
+		{
+			return index < lineCount - 1 ? LINE_DELIMITER : "";
+		}
+
+		@Override
+		public int getOffset(int index)
+		{
+			return Math.min(index, lineCount - 1) * LINE_DELIMITER.length();
+		}
+
+		@Override
+		public int getLineAtOffset(int offset)
+		{
+			return Math.min(offset / LINE_DELIMITER.length(), lineCount - 1);
+		}
+	}
+
 	////////////////////////////////////////
 
 	private static class TextContent implements StyledTextContent
@@ -259,13 +552,13 @@ public class TextBrailleContent
 		@Override
 		public int getCharCount()
 		{
-			return textBrailleContent.getCharCount(textBrailleContent.textNodes);
+			return TextBrailleContent.getCharCount(textBrailleContent.textNodes);
 		}
 
 		@Override
 		public int getLineCount()
 		{
-			return textBrailleContent.getLineCount(textBrailleContent.textNodes);
+			return TextBrailleContent.getLineCount(textBrailleContent.textNodes);
 		}
 
 		@Override
@@ -277,38 +570,43 @@ public class TextBrailleContent
 		@Override
 		public String getLine(int lineIndex)
 		{
-			return textBrailleContent.getLine(textBrailleContent.textNodes, lineIndex);
+			return TextBrailleContent.getLine(textBrailleContent.textNodes, lineIndex);
 		}
 
 		@Override
 		public int getLineAtOffset(int offset)
 		{
-			return textBrailleContent.getLineAtOffset(textBrailleContent.textNodes, offset);
+			return TextBrailleContent.getLineAtOffset(textBrailleContent.textNodes, offset);
 		}
 
 		@Override
 		public int getOffsetAtLine(int lineIndex)
 		{
-			return textBrailleContent.getOffsetAtLine(textBrailleContent.textNodes, lineIndex);
+			return TextBrailleContent.getOffsetAtLine(textBrailleContent.textNodes, lineIndex);
 		}
 
 		@Override
 		public String getTextRange(int start, int length)
 		{
-			return textBrailleContent.getTextRange(textBrailleContent.textNodes, start, length);
+			return TextBrailleContent.getTextRange(textBrailleContent.textNodes, start, length);
 		}
 
 		@Override
 		public void replaceTextRange(int start, int replaceLength, String text)
 		{
+			long time = System.nanoTime();
 			TextRange textRanges[] = textBrailleContent.replaceTextRange(textBrailleContent.textChangeListeners, textBrailleContent.textContent, textBrailleContent.textNodes, textBrailleContent.brailleNodes, start, replaceLength, text);
 			textBrailleContent.updateForward(textRanges);
+			textBrailleContent.publish();
+			Metrics.REPLACE_TEXT_RANGE.record(System.nanoTime() - time);
 		}
 
 		@Override
 		public void setText(String text)
 		{
-			textBrailleContent.setText(textBrailleContent.textChangeListeners, textBrailleContent.textContent, textBrailleContent.textNodes, textBrailleContent.brailleNodes, text);
+			TextRange textRanges[] = textBrailleContent.setText(textBrailleContent.textChangeListeners, textBrailleContent.textContent, textBrailleContent.textNodes, textBrailleContent.brailleNodes, text);
+			textBrailleContent.updateForward(textRanges);
+			textBrailleContent.publish();
 		}
 	}
 
@@ -338,13 +636,13 @@ public class TextBrailleContent
 		@Override
 		public int getCharCount()
 		{
-			return textBrailleContent.getCharCount(textBrailleContent.brailleNodes);
+			return TextBrailleContent.getCharCount(textBrailleContent.brailleNodes);
 		}
 
 		@Override
 		public int getLineCount()
 		{
-			return textBrailleContent.getLineCount(textBrailleContent.brailleNodes);
+			return TextBrailleContent.getLineCount(textBrailleContent.brailleNodes);
 		}
 
 		@Override
@@ -356,66 +654,77 @@ public class TextBrailleContent
 		@Override
 		public String getLine(int lineIndex)
 		{
-			return textBrailleContent.getLine(textBrailleContent.brailleNodes, lineIndex);
+			return TextBrailleContent.getLine(textBrailleContent.brailleNodes, lineIndex);
 		}
 
 		@Override
 		public int getLineAtOffset(int offset)
 		{
-			return textBrailleContent.getLineAtOffset(textBrailleContent.brailleNodes, offset);
+			return TextBrailleContent.getLineAtOffset(textBrailleContent.brailleNodes, offset);
 		}
 
 		@Override
 		public int getOffsetAtLine(int lineIndex)
 		{
-			return textBrailleContent.getOffsetAtLine(textBrailleContent.brailleNodes, lineIndex);
+			return TextBrailleContent.getOffsetAtLine(textBrailleContent.brailleNodes, lineIndex);
 		}
 
 		@Override
 		public String getTextRange(int start, int length)
 		{
-			return textBrailleContent.getTextRange(textBrailleContent.brailleNodes, start, length);
+			return TextBrailleContent.getTextRange(textBrailleContent.brailleNodes, start, length);
 		}
 
 		@Override
 		public void replaceTextRange(int start, int replaceLength, String text)
 		{
+			long time = System.nanoTime();
 			TextRange textRanges[] = textBrailleContent.replaceTextRange(textBrailleContent.brailleChangeListeners, textBrailleContent.brailleContent, textBrailleContent.brailleNodes, textBrailleContent.textNodes, start, replaceLength, text);
 			textBrailleContent.updateBackward(textRanges);
+			textBrailleContent.publish();
+			Metrics.REPLACE_TEXT_RANGE.record(System.nanoTime() - time);
 		}
 
 		@Override
 		public void setText(String text)
 		{
-			textBrailleContent.setText(textBrailleContent.brailleChangeListeners, textBrailleContent.brailleContent, textBrailleContent.brailleNodes, textBrailleContent.textNodes, text);
+			TextRange textRanges[] = textBrailleContent.setText(textBrailleContent.brailleChangeListeners, textBrailleContent.brailleContent, textBrailleContent.brailleNodes, textBrailleContent.textNodes, text);
+			textBrailleContent.updateBackward(textRanges);
+			textBrailleContent.publish();
 		}
 	}
 
 	////////////////////////////////////////
 
-	private static StringBuilder[] linesSplit(String text)
+	/**
+	 * <p>
+	 * Returns the offsets of the ends of the lines in <code>text</code>,
+	 * or <code>null</code> if it has no line delimiter.
+	 * </p>
+	 */
+	private static int[] linesSplit(String text)
 	{
-		ArrayList<StringBuilder> lines = new ArrayList<>(3);
-		int crs = 0;
-		int end = text.indexOf(LINE_DELIMITER, crs);
+		int end = text.indexOf(LINE_DELIMITER);
+		if(end < 0)
+			return null;
+
+		int lineEnds[] = new int[4];
+		int count = 0;
 		while(end > -1)
 		{
 			end += LINE_DELIMITER.length();
-			lines.add(new StringBuilder(text.substring(crs, end)));
-			crs = end;
-			end = text.indexOf(LINE_DELIMITER, crs);
+			if(count + 1 >= lineEnds.length)
+				lineEnds = Arrays.copyOf(lineEnds, lineEnds.length * 2);
+			lineEnds[count++] = end;
+			end = text.indexOf(LINE_DELIMITER, end);
 		}
 
 		//   not ending with a line delimiter
-		if(crs > 0 && crs < text.length())
-			lines.add(new StringBuilder(text.substring(crs)));
+		if(lineEnds[count - 1] < text.length())
+			lineEnds[count++] = text.length();
 
-		if(lines.isEmpty())
-			return null;
-		else
-			return lines.toArray(new StringBuilder[lines.size()]);
+		return Arrays.copyOf(lineEnds, count);
 	}
-
 	////////////////////////////////////////
 
 	private void addTextChangeListener(TextChangeListener listener)
@@ -440,13 +749,12 @@ public class TextBrailleContent
 
 	////////////////////////////////////////
 
-	private int getCharCount(ArrayList<Node> nodes)
+	static int getCharCount(LineTree<CharSequence> nodes)
 	{
-		Node node = nodes.get(nodes.size() - 1);
-		return node.offset + node.text.length();
+		return nodes.getCharCount();
 	}
 
-	private int getLineCount(ArrayList<Node> nodes)
+	static int getLineCount(LineTree<CharSequence> nodes)
 	{
 		int count = nodes.size();
 		if(count <= 0)
@@ -460,11 +768,29 @@ public class TextBrailleContent
 		return LINE_DELIMITER;
 	}
 
-	private String getLine(ArrayList<Node> nodes, int lineIndex)
+	private static int getLineLength(CharSequence line)
+	{
+		if(endsWithDelimiter(line))
+			return line.length() - LINE_DELIMITER.length();
+		return line.length();
+	}
+
+	private static boolean endsWithDelimiter(CharSequence text)
+	{
+		int length = text.length() - LINE_DELIMITER.length();
+		if(length < 0)
+			return false;
+		for(int i = 0; i < LINE_DELIMITER.length(); i++)
+			if(text.charAt(length + i) != LINE_DELIMITER.charAt(i))
+				return false;
+		return true;
+	}
+
+	static String getLine(LineTree<CharSequence> nodes, int lineIndex)
 	{
 		if(lineIndex >= nodes.size())
 			return "";
-		String line = nodes.get(lineIndex).text.toString();
+		String line = nodes.get(lineIndex).toString();
 		int index = line.indexOf(LINE_DELIMITER);
 		if(index < 0)
 			return line;
@@ -472,70 +798,64 @@ public class TextBrailleContent
 			return line.substring(0, index);
 	}
 
-	private int getLineAtOffset(ArrayList<Node> nodes, int offset)
+	static int getLineAtOffset(LineTree<CharSequence> nodes, int offset)
 	{
-		int cnt = 0;
-		for(Node node : nodes)
-			if(node.offset <= offset && offset < node.offset + node.text.length())
-				break;
-			else if(node.text.indexOf(LINE_DELIMITER) >= 0)
-				cnt++;
-		return cnt;
+		return nodes.getLineAtOffset(offset);
 	}
 
-	private int getOffsetAtLine(ArrayList<Node> nodes, int lineIndex)
+	static int getOffsetAtLine(LineTree<CharSequence> nodes, int lineIndex)
 	{
-		if(lineIndex >= nodes.size())
-			return getCharCount(nodes);
-		return nodes.get(lineIndex).offset;
+		return nodes.getOffset(lineIndex);
 	}
 
-	private String getTextRange(ArrayList<Node> nodes, int start, int length)
+	static String getTextRange(LineTree<CharSequence> nodes, int start, int length)
 	{
 		if(length <= 0)
 			return "";
 
 		int startIndex = getLineAtOffset(nodes, start);
 		int finishIndex = getLineAtOffset(nodes, start + length);
-		Node node = nodes.get(startIndex);
+		CharSequence line = nodes.get(startIndex);
+		start -= nodes.getOffset(startIndex);
 
 		//   all in one line
 		if(startIndex == finishIndex)
-			return node.text.toString();
+			return line.subSequence(start, start + length).toString();
 
-		StringBuilder text = new StringBuilder(100);
+		StringBuilder text = new StringBuilder(length);
 
 		//   first node
-		start -= node.offset;
-		length -= node.text.length() - start;
-		text.append(node.text.substring(start));
+		length -= line.length() - start;
+		PieceLine.append(text, line, start, line.length());
 
 		//   in-between textNodes
 		for(int i = startIndex + 1; i < finishIndex; i++)
 		{
-			node = nodes.get(i);
-			length -= node.text.length();
-			text.append(node.text);
+			line = nodes.get(i);
+			length -= line.length();
+			PieceLine.append(text, line, 0, line.length());
 		}
 
 		//   last node
-		node = nodes.get(finishIndex);
-		text.append(node.text.substring(0, length));
+		line = nodes.get(finishIndex);
+		PieceLine.append(text, line, 0, length);
 
 		return text.toString();
 	}
 
-	private TextRange[] replaceTextRange(List<TextChangeListener> listeners, StyledTextContent content, ArrayList<Node> nodes, ArrayList<Node> others, int start, int length, String text)
+	private TextRange[] replaceTextRange(List<TextChangeListener> listeners, StyledTextContent content, LineTree<CharSequence> nodes, LineTree<CharSequence> others, int start, int length, String text)
 	{
+		Object editEvent = FlightRecorder.beginEdit();
+
 		int startIndex = getLineAtOffset(nodes, start);
 
-		StringBuilder lines[] = linesSplit(text);
+		int lines[] = linesSplit(text);
 
 		int newLineCount = 0;
 		if(lines != null)
 		{
 			newLineCount = lines.length;
-			if(lines[lines.length - 1].indexOf(LINE_DELIMITER) < 0)
+			if(!endsWithDelimiter(text))
 				newLineCount--;
 		}
 
@@ -546,11 +866,31 @@ public class TextBrailleContent
 		TextRange othersChange = null;
 		if(others != null)
 		{
-			Node nodeStart = others.get(startIndex);
-			Node nodeFinish = others.get(startIndex + replaceLineCount);
-			othersChange = new TextRange(nodeStart.offset, (nodeFinish.offset - nodeStart.offset) + nodeFinish.text.length(), startIndex, startIndex + replaceLineCount);
+			int offsetStart = others.getOffset(startIndex);
+			int offsetFinish = others.getOffset(startIndex + replaceLineCount + 1);
+			othersChange = new TextRange(offsetStart, offsetFinish - offsetStart, startIndex, startIndex + replaceLineCount);
 		}
 
+		if(editDepth > 0)
+		{
+			//   listeners are notified once when the edit is committed
+			editRegionExtend(nodes, start, length, text.length());
+			nodesReplace(nodes, others, start, length, lines, text);
+		}
+		else
+		{
+			fireTextChanging(listeners, content, start, length, replaceLineCount, text, newLineCount);
+			nodesReplace(nodes, others, start, length, lines, text);
+			fireTextChanged(listeners, content);
+		}
+
+		FlightRecorder.commitEdit(editEvent, getPaneName(content), start, length, text.length(), newLineCount - replaceLineCount);
+
+		return new TextRange[]{ nodesChange,othersChange };
+	}
+
+	private void fireTextChanging(List<TextChangeListener> listeners, StyledTextContent content, int start, int length, int replaceLineCount, String text, int newLineCount)
+	{
 		TextChangingEvent textChangingEvent = new TextChangingEvent(content);
 		textChangingEvent.newText = text;
 		textChangingEvent.newCharCount = text.length();
@@ -558,22 +898,197 @@ public class TextBrailleContent
 		textChangingEvent.start = start;
 		textChangingEvent.replaceLineCount = replaceLineCount;
 		textChangingEvent.replaceCharCount = length;
+		Object listenerEvent = FlightRecorder.beginListener();
 		for(TextChangeListener listener : listeners)
 			listener.textChanging(textChangingEvent);
+		FlightRecorder.commitListener(listenerEvent, getPaneName(content), false, listeners.size());
+	}
 
-		nodesDelete(nodes, others, start, length);
-		nodesInsert(nodes, others, lines, text, start);
-
+	private void fireTextChanged(List<TextChangeListener> listeners, StyledTextContent content)
+	{
 		TextChangedEvent textChangedEvent = new TextChangedEvent(content);
+		Object listenerEvent = FlightRecorder.beginListener();
 		for(TextChangeListener listener : listeners)
 			listener.textChanged(textChangedEvent);
+		FlightRecorder.commitListener(listenerEvent, getPaneName(content), true, listeners.size());
+	}
 
-		return new TextRange[]{ nodesChange,othersChange };
+	private void fireTextSet(List<TextChangeListener> listeners, StyledTextContent content)
+	{
+		TextChangedEvent textChangedEvent = new TextChangedEvent(content);
+		for(TextChangeListener listener : listeners)
+			listener.textSet(textChangedEvent);
+	}
+
+	private String getPaneName(StyledTextContent content)
+	{
+		if(content == textContent)
+			return "text";
+		return "braille";
+	}
+
+	/**
+	 * <p>
+	 * Adds a replacement about to be made to the regions changed in the
+	 * pane of <code>nodes</code>, merging it with those it overlaps or
+	 * touches, and keeping the text they had before the outermost
+	 * {@link #beginEdit()}.  Regions are kept in order and apart.
+	 * </p>
+	 */
+	private void editRegionExtend(LineTree<CharSequence> nodes, int start, int length, int textLength)
+	{
+		ArrayList<EditRegion> edits = nodes == textNodes ? textEdits : brailleEdits;
+		int first = 0;
+		while(first < edits.size() && edits.get(first).end < start)
+			first++;
+		int last = first;
+		while(last < edits.size() && edits.get(last).start <= start + length)
+			last++;
+
+		//   text between merged regions is unchanged, so is read from the current text
+		int regionStart = start, offset = start;
+		StringBuilder oldText = new StringBuilder();
+		for(int i = first; i < last; i++)
+		{
+			EditRegion edit = edits.get(i);
+			if(i == first && edit.start < start)
+				regionStart = offset = edit.start;
+			oldText.append(getTextRange(nodes, offset, edit.start - offset));
+			oldText.append(edit.oldText);
+			offset = edit.end;
+		}
+		if(offset < start + length)
+		{
+			oldText.append(getTextRange(nodes, offset, start + length - offset));
+			offset = start + length;
+		}
+
+		int change = textLength - length;
+		EditRegion edit = new EditRegion(regionStart, offset + change, oldText.toString());
+		edits.subList(first, last).clear();
+		edits.add(first, edit);
+		for(int i = first + 1; i < edits.size(); i++)
+		{
+			edits.get(i).start += change;
+			edits.get(i).end += change;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Notifies listeners of the regions changed in a pane, one replacement
+	 * for each run of changed lines.  Listeners expect to see the old text
+	 * while handling textChanging, so the pane is shown in turn with the
+	 * lines from <code>before</code> after each run, spliced in without
+	 * copying text or changing the flags of lines.
+	 * </p>
+	 */
+	private void commitEdit(List<TextChangeListener> listeners, StyledTextContent content, LineTree<CharSequence> nodes, LineTree<CharSequence> before, ArrayList<EditRegion> edits)
+	{
+		if(edits.isEmpty())
+			return;
+
+		//   regions on the same or next line are one run, and each run ends on a line otherwise unchanged
+		for(int i = edits.size() - 1; i > 0; i--)
+		{
+			EditRegion edit = edits.get(i - 1), next = edits.get(i);
+			if(getLineAtOffset(nodes, next.start) > getLineAtOffset(nodes, edit.end) + 1)
+				continue;
+			edit.oldText += getTextRange(nodes, edit.end, next.start - edit.end) + next.oldText;
+			edit.end = next.end;
+			edits.remove(i);
+		}
+
+		LineTree<CharSequence> after = nodes.copy();
+		LineTree<CharSequence> lines = before;
+		for(EditRegion edit : edits)
+		{
+			String newText = getTextRange(after, edit.start, edit.end - edit.start);
+			if(newText.equals(edit.oldText))
+				continue;
+
+			nodes.setAll(lines);
+			fireTextChanging(listeners, content, edit.start, edit.oldText.length(), getDelimiterCount(edit.oldText), newText, getDelimiterCount(newText));
+			lines = after.splice(getLineAtOffset(after, edit.end) + 1, lines, getLineAtOffset(lines, edit.start + edit.oldText.length()) + 1);
+			nodes.setAll(lines);
+			fireTextChanged(listeners, content);
+		}
+		nodes.setAll(after);
+		edits.clear();
 	}
 
-	private void setText(List<TextChangeListener> listeners, StyledTextContent content, ArrayList<Node> nodes, ArrayList<Node> others, String text)
+	private static int getDelimiterCount(String text)
 	{
-		replaceTextRange(listeners, content, nodes, others, 0, getCharCount(nodes), text);
+		int count = 0;
+		int index = text.indexOf(LINE_DELIMITER);
+		while(index >= 0)
+		{
+			count++;
+			index = text.indexOf(LINE_DELIMITER, index + LINE_DELIMITER.length());
+		}
+		return count;
+	}
+
+	private TextRange[] setText(List<TextChangeListener> listeners, StyledTextContent content, LineTree<CharSequence> nodes, LineTree<CharSequence> others, String text)
+	{
+		return replaceTextRange(listeners, content, nodes, others, 0, getCharCount(nodes), text);
+	}
+
+	/**
+	 * <p>
+	 * Replaces the text from <code>start</code> to
+	 * <code>start + length</code> with <code>text</code>, but only replaces
+	 * the part between the common prefix and suffix of the old and new text,
+	 * so listeners redraw as little as possible.  A line delimiter is never
+	 * split.
+	 * </p>
+	 */
+	private void replaceTextChanged(List<TextChangeListener> listeners, StyledTextContent content, LineTree<CharSequence> nodes, int start, int length, String text)
+	{
+		String old = getTextRange(nodes, start, length);
+		int max = Math.min(old.length(), text.length());
+
+		int prefix = 0;
+		while(prefix < max && old.charAt(prefix) == text.charAt(prefix))
+			prefix++;
+		int suffix = 0;
+		while(suffix < max - prefix && old.charAt(old.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix))
+			suffix++;
+		if(prefix == old.length() && prefix == text.length())
+			return;
+
+		//   move off the middle of a line delimiter
+		for(int i = 1; i < LINE_DELIMITER.length(); i++)
+			if(isDelimiterAt(old, prefix - i) || isDelimiterAt(text, prefix - i))
+			{
+				prefix -= i;
+				break;
+			}
+		for(int i = 1; i < LINE_DELIMITER.length(); i++)
+			if(isDelimiterAt(old, old.length() - suffix - i) || isDelimiterAt(text, text.length() - suffix - i))
+			{
+				suffix -= LINE_DELIMITER.length() - i;
+				break;
+			}
+
+		replaceTextRange(listeners, content, nodes, null, start + prefix, old.length() - prefix - suffix, text.substring(prefix, text.length() - suffix));
+	}
+
+	private static boolean isDelimiterAt(String text, int index)
+	{
+		return index >= 0 && text.startsWith(LINE_DELIMITER, index);
+	}
+
+	/**
+	 * <p>
+	 * Clears the flags of lines that were replaced in full by their
+	 * translations.
+	 * </p>
+	 */
+	private void nodesTranslated(LineTree<CharSequence> nodes, int indexStart, int indexFinish)
+	{
+		getUpdate(nodes).set(indexStart, indexFinish + 1, false);
+		getDeleted(nodes).set(indexStart, indexFinish + 1, false);
 	}
 
 	////////////////////////////////////////
@@ -582,22 +1097,33 @@ public class TextBrailleContent
 	{
 		if(textRanges[1] == null)
 			return;
-		Node node = brailleNodes.get(textRanges[0].indexStart);
-		if(!(node.update || node.deleted))
+		long time = System.nanoTime();
+		updateForwardLines(textRanges);
+		Metrics.UPDATE_FORWARD.record(System.nanoTime() - time);
+	}
+
+	private void updateForwardLines(TextRange textRanges[])
+	{
+		if(!(brailleUpdate.get(textRanges[0].indexStart) || brailleDeleted.get(textRanges[0].indexStart)))
+			return;
+		Metrics.LINES_PER_EDIT.record(textRanges[0].indexCount + 1);
+
+		if(translationExecutor != null)
+		{
+			updateLater(textNodes, brailleNodes, brailleChangeListeners, brailleContent, textRanges, true);
 			return;
+		}
 
+		//   only content without an executor gets here, the editor always has one
 		int indexStart = textRanges[0].indexStart;
 		int indexFinish = textRanges[0].indexStart + textRanges[0].indexCount;
-		Node nodeStart = textNodes.get(indexStart);
-		Node nodeFinish = textNodes.get(indexFinish);
-		int length = (nodeFinish.offset - nodeStart.offset) + nodeFinish.text.length();
 
-		StringBuilder braille = new StringBuilder(length * 3);
+		String lines[] = new String[indexFinish - indexStart + 1];
 		for(int i = indexStart; i <= indexFinish; i++)
 		{
-			node = textNodes.get(i);
+			CharSequence node = textNodes.get(i);
 
-//			StringBuilder line = new StringBuilder(node.text);
+//			StringBuilder line = new StringBuilder(node);
 //			String nl = "";
 //			int index = line.indexOf(LINE_DELIMITER);
 //			while(index >= 0)
@@ -618,67 +1144,253 @@ public class TextBrailleContent
 //			else
 //				braille.append(result + nl);
 
-			if(node.text.length() == 0)
-				continue;
-			if(node.text.toString().equals(LINE_DELIMITER))
-			{
-				braille.append(LINE_DELIMITER);
-				continue;
-			}
-			length = node.text.length() * 5;
-			if(length < 0x100)
-				length = 0x100;
-			String result = LibLouisAPH.translateForward(node.text.toString(), length, "english-ueb-grade2.rst", null, null, null, null);
-			if(result == null)
-			{
-				if(node.text.lastIndexOf(LINE_DELIMITER) >= 0)
-					braille.append(LINE_DELIMITER);
-			}
-			else
-				braille.append(result);
+			lines[i - indexStart] = node.toString();
 		}
 
-		replaceTextRange(brailleChangeListeners, brailleContent, brailleNodes, null, textRanges[1].textOffset, textRanges[1].textLength, braille.toString());
+		String braille = BulkTranslator.translate(lineTranslator, lines, true);
+		replaceTextChanged(brailleChangeListeners, brailleContent, brailleNodes, textRanges[1].textOffset, textRanges[1].textLength, braille);
+		nodesTranslated(brailleNodes, indexStart, indexFinish);
 	}
 
 	void updateBackward(TextRange textRanges[])
 	{
 		if(textRanges[1] == null)
 			return;
-		Node node = textNodes.get(textRanges[0].indexStart);
-		if(!(node.update || node.deleted))
+		long time = System.nanoTime();
+		updateBackwardLines(textRanges);
+		Metrics.UPDATE_BACKWARD.record(System.nanoTime() - time);
+	}
+
+	private void updateBackwardLines(TextRange textRanges[])
+	{
+		if(!(textUpdate.get(textRanges[0].indexStart) || textDeleted.get(textRanges[0].indexStart)))
 			return;
+		Metrics.LINES_PER_EDIT.record(textRanges[0].indexCount + 1);
+
+		if(translationExecutor != null)
+		{
+			updateLater(brailleNodes, textNodes, textChangeListeners, textContent, textRanges, false);
+			return;
+		}
 
 		int indexStart = textRanges[0].indexStart;
 		int indexFinish = textRanges[0].indexStart + textRanges[0].indexCount;
-		Node nodeStart = brailleNodes.get(indexStart);
-		Node nodeFinish = brailleNodes.get(indexFinish);
-		int length = (nodeFinish.offset - nodeStart.offset) + nodeFinish.text.length();
 
-		StringBuilder text = new StringBuilder(length * 3);
+		String lines[] = new String[indexFinish - indexStart + 1];
 		for(int i = indexStart; i <= indexFinish; i++)
+			lines[i - indexStart] = brailleNodes.get(i).toString();
+
+		String text = BulkTranslator.translate(lineTranslator, lines, false);
+		replaceTextChanged(textChangeListeners, textContent, textNodes, textRanges[1].textOffset, textRanges[1].textLength, text);
+		nodesTranslated(textNodes, indexStart, indexFinish);
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Keeps the lines of others aligned with the edited lines and marks them
+	 * as waiting for translation.  Until their translations arrive the first
+	 * line keeps its previous translation and any added lines are empty.
+	 * </p>
+	 */
+	private void updateLater(LineTree<CharSequence> nodes, LineTree<CharSequence> others, List<TextChangeListener> othersListeners, StyledTextContent othersContent, TextRange textRanges[], boolean forward)
+	{
+		int indexStart = textRanges[0].indexStart;
+		int newLineCount = textRanges[0].indexCount;
+		int replaceLineCount = textRanges[1].indexCount - textRanges[1].indexStart;
+
+		//   only replace line delimiters, so lines outside the edit keep their nodes
+		if(newLineCount != replaceLineCount)
+		{
+			int start = others.getOffset(indexStart) + getLineLength(others.get(indexStart));
+			int finish = others.getOffset(indexStart + replaceLineCount) + getLineLength(others.get(indexStart + replaceLineCount));
+			StringBuilder delimiters = new StringBuilder(newLineCount * LINE_DELIMITER.length());
+			for(int i = 0; i < newLineCount; i++)
+				delimiters.append(LINE_DELIMITER);
+			replaceTextRange(othersListeners, othersContent, others, null, start, finish - start, delimiters.toString());
+		}
+
+		getUpdate(others).set(indexStart, indexStart + newLineCount + 1, true);
+
+		lineEdits.add(new int[]{ indexStart, replaceLineCount, newLineCount });
+		translatePending();
+	}
+
+	/**
+	 * <p>
+	 * Returns where the line at <code>index</code> at <code>version</code> is
+	 * now, or -1 if that line has since been changed.
+	 * </p>
+	 */
+	private int lineEditsRemap(int version, int index)
+	{
+		for(int i = version - lineEditsVersion; i < lineEdits.size(); i++)
 		{
-			node = brailleNodes.get(i);
-			if(node.text.length() == 0)
+			int lineEdit[] = lineEdits.get(i);
+			if(index < lineEdit[0])
 				continue;
-			if(node.text.toString().equals(LINE_DELIMITER))
+			if(index <= lineEdit[0] + lineEdit[1])
+				return -1;
+			index += lineEdit[2] - lineEdit[1];
+		}
+		return index;
+	}
+
+	/**
+	 * <p>
+	 * Submits lines waiting for translation, nearest the visible lines
+	 * first, while there are fewer jobs than twice the executor's threads.
+	 * </p>
+	 */
+	private void translatePending()
+	{
+		if(translationExecutor == null)
+			return;
+
+		if(translationJobs.isEmpty())
+		{
+			lineEditsVersion += lineEdits.size();
+			lineEdits.clear();
+		}
+
+		int jobsMax = translationExecutor.getThreadCount() * 2;
+		if(translationJobs.size() >= jobsMax)
+			return;
+		if(textUpdate.isEmpty() && brailleUpdate.isEmpty())
+			return;
+
+		HashSet<Integer> submitted = new HashSet<>();
+		for(TranslationExecutor.Job job : translationJobs)
+			for(int index : job.indexes)
 			{
-				text.append(LINE_DELIMITER);
-				continue;
+				index = lineEditsRemap(job.version, index);
+				if(index >= 0)
+					submitted.add(index);
 			}
-			length = node.text.length() * 5;
-			if(length < 0x100)
-				length = 0x100;
-			String result = LibLouisAPH.translateBackward(node.text.toString(), length, "english-ueb-grade2.rst", null, null, null, null);
-			if(result == null)
+
+		ArrayList<Integer> forward = new ArrayList<>(TRANSLATION_CHUNK);
+		ArrayList<Integer> backward = new ArrayList<>(TRANSLATION_CHUNK);
+		int lineCount = textNodes.size();
+		for(int distance = 0; distance <= TRANSLATION_PREFETCH; distance++)
+			for(int i = 0; i < viewports.length; i += 2)
 			{
-				if(node.text.lastIndexOf(LINE_DELIMITER) >= 0)
-					text.append(LINE_DELIMITER);
+				int lineTop = viewports[i] - distance;
+				int lineBottom = distance == 0 ? viewports[i + 1] : lineTop;
+				if(distance > 0)
+					translatePendingLine(viewports[i + 1] + distance, lineCount, submitted, forward, backward);
+				for(int index = lineTop; index <= lineBottom; index++)
+				{
+					translatePendingLine(index, lineCount, submitted, forward, backward);
+					if(translationJobs.size() >= jobsMax)
+						return;
+				}
 			}
-			else
-				text.append(result);
+
+		translatePendingSubmit(forward, true);
+		translatePendingSubmit(backward, false);
+	}
+
+	private void translatePendingLine(int index, int lineCount, HashSet<Integer> submitted, ArrayList<Integer> forward, ArrayList<Integer> backward)
+	{
+		if(index < 0 || index >= lineCount || !submitted.add(index))
+			return;
+
+		if(brailleUpdate.get(index))
+		{
+			forward.add(index);
+			if(forward.size() >= TRANSLATION_CHUNK)
+				translatePendingSubmit(forward, true);
+		}
+		else if(textUpdate.get(index))
+		{
+			backward.add(index);
+			if(backward.size() >= TRANSLATION_CHUNK)
+				translatePendingSubmit(backward, false);
+		}
+	}
+
+	private void translatePendingSubmit(ArrayList<Integer> indexes, boolean forward)
+	{
+		if(indexes.isEmpty())
+			return;
+
+		LineTree<CharSequence> nodes = forward ? textNodes : brailleNodes;
+		int lineIndexes[] = new int[indexes.size()];
+		String lines[] = new String[indexes.size()];
+		for(int i = 0; i < lineIndexes.length; i++)
+		{
+			lineIndexes[i] = indexes.get(i);
+			lines[i] = nodes.get(lineIndexes[i]).toString();
+		}
+		indexes.clear();
+
+		TranslationExecutor.Job job = new TranslationExecutor.Job(lineEditsVersion + lineEdits.size(), forward, lineIndexes, lines);
+		translationJobs.add(job);
+		translationExecutor.submit(this, job);
+	}
+
+	/**
+	 * <p>
+	 * Applies the translations of a job submitted by
+	 * {@link #translatePending}.  Must be called on the UI thread.  Results
+	 * for lines that were changed after they were submitted are dropped, as
+	 * those lines are waiting to be submitted again.
+	 * </p>
+	 */
+	void applyTranslations(TranslationExecutor.Job job)
+	{
+		translationJobs.remove(job);
+
+		LineTree<CharSequence> nodes, others;
+		List<TextChangeListener> othersListeners;
+		StyledTextContent othersContent;
+		if(job.forward)
+		{
+			nodes = textNodes;
+			others = brailleNodes;
+			othersListeners = brailleChangeListeners;
+			othersContent = brailleContent;
+		}
+		else
+		{
+			nodes = brailleNodes;
+			others = textNodes;
+			othersListeners = textChangeListeners;
+			othersContent = textContent;
+		}
+
+		//   one change event for the whole job
+		beginEdit();
+		try
+		{
+			for(int i = 0; i < job.lines.length; i++)
+			{
+				int index = lineEditsRemap(job.version, job.indexes[i]);
+				if(index < 0)
+					continue;
+				CharSequence other = others.get(index);
+				if(!getUpdate(others).get(index) || !job.lines[i].contentEquals(nodes.get(index)))
+					continue;
+
+				//   failed lines are left empty, as translateLine does when translation fails
+				String result = job.results[i];
+				if(result == null)
+					result = "";
+				int delimiter = result.indexOf(LINE_DELIMITER);
+				if(delimiter >= 0)
+					result = result.substring(0, delimiter);
+				int length = getLineLength(other);
+				if(!result.contentEquals(other.subSequence(0, length)))
+					replaceTextChanged(othersListeners, othersContent, others, others.getOffset(index), length, result);
+				getUpdate(others).set(index, false);
+			}
+		}
+		finally
+		{
+			commitEdit();
 		}
 
-		replaceTextRange(textChangeListeners, textContent, textNodes, null, textRanges[1].textOffset, textRanges[1].textLength, text.toString());
+		translatePending();
 	}
 }
@@ -0,0 +1,112 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * Immutable view of the text and braille panes of a
+ * {@link TextBrailleContent}, made by {@link TextBrailleContent#snapshot()}.
+ * It shares its lines with the content, which only ever replaces them, so
+ * it may be read from any thread without locking.  All fields are final,
+ * so it is safely published to other threads however it is passed.
+ * </p><p>
+ * The version is increased once by every whole edit, which may change
+ * both panes, so snapshots with the same version have the same lines, and
+ * the two panes of a snapshot always have the same line count.
+ * </p>
+ */
+public final class TextBrailleSnapshot
+{
+	private final long version;
+	private final LineTree<CharSequence> textNodes;
+	private final LineTree<CharSequence> brailleNodes;
+
+	TextBrailleSnapshot(long version, LineTree<CharSequence> textNodes, LineTree<CharSequence> brailleNodes)
+	{
+		this.version = version;
+		this.textNodes = textNodes;
+		this.brailleNodes = brailleNodes;
+	}
+
+	public long getVersion()
+	{
+		return version;
+	}
+
+	////////////////////////////////////////
+
+	public int getTextCharCount()
+	{
+		return TextBrailleContent.getCharCount(textNodes);
+	}
+
+	public int getTextLineCount()
+	{
+		return TextBrailleContent.getLineCount(textNodes);
+	}
+
+	public String getTextLine(int lineIndex)
+	{
+		return TextBrailleContent.getLine(textNodes, lineIndex);
+	}
+
+	public int getTextLineAtOffset(int offset)
+	{
+		return TextBrailleContent.getLineAtOffset(textNodes, offset);
+	}
+
+	public int getTextOffsetAtLine(int lineIndex)
+	{
+		return TextBrailleContent.getOffsetAtLine(textNodes, lineIndex);
+	}
+
+	public String getTextRange(int start, int length)
+	{
+		return TextBrailleContent.getTextRange(textNodes, start, length);
+	}
+
+	////////////////////////////////////////
+
+	public int getBrailleCharCount()
+	{
+		return TextBrailleContent.getCharCount(brailleNodes);
+	}
+
+	public int getBrailleLineCount()
+	{
+		return TextBrailleContent.getLineCount(brailleNodes);
+	}
+
+	public String getBrailleLine(int lineIndex)
+	{
+		return TextBrailleContent.getLine(brailleNodes, lineIndex);
+	}
+
+	public int getBrailleLineAtOffset(int offset)
+	{
+		return TextBrailleContent.getLineAtOffset(brailleNodes, offset);
+	}
+
+	public int getBrailleOffsetAtLine(int lineIndex)
+	{
+		return TextBrailleContent.getOffsetAtLine(brailleNodes, lineIndex);
+	}
+
+	public String getBrailleRange(int start, int length)
+	{
+		return TextBrailleContent.getTextRange(brailleNodes, start, length);
+	}
+}
@@ -18,8 +18,12 @@ package org.aph.braillejanus;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.custom.VerifyKeyListener;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
 import org.eclipse.swt.events.KeyEvent;
 import org.eclipse.swt.events.KeyListener;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.events.VerifyEvent;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.layout.GridData;
@@ -27,17 +31,29 @@ import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Shell;
 
+import java.io.File;
+import java.io.IOException;
+
 public class TextEditors
 {
+	static final String BRAILLE_FONT = "APH_Braille_Font-6s";
+
 	private final Shell parentShell;
+	private final FontLoader fontLoader;
 	private final StyledText plainText, brailleText;
 	private final TextBrailleContent textBrailleContent;
+	private final TranslationExecutor translationExecutor;
+	private Font brailleFont;
 
-	TextEditors(Shell parentShell)
+	TextEditors(Shell parentShell, FontLoader fontLoader, Translator translator)
 	{
 		this.parentShell = parentShell;
+		this.fontLoader = fontLoader;
 
-		textBrailleContent = new TextBrailleContent();
+		textBrailleContent = new TextBrailleContent(translator);
+		translationExecutor = new TranslationExecutor(parentShell.getDisplay());
+		textBrailleContent.setTranslationExecutor(translationExecutor);
+		parentShell.addDisposeListener(new DisposeHandler());
 
 		Composite composite = new Composite(parentShell, 0);
 		composite.setLayout(new GridLayout(2, true));
@@ -46,16 +62,82 @@ public class TextEditors
 		plainText = new StyledText(composite, SWT.BORDER | SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL);
 		plainText.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true, 1, 1));
 		plainText.setContent(textBrailleContent.getTextContent());
+		plainText.addPaintListener(new ViewportHandler(false));
 
 		brailleText = new StyledText(composite, SWT.BORDER | SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL);
 		brailleText.setLayoutData(new GridData(GridData.FILL, GridData.FILL, true, true, 1, 1));
 		brailleText.setContent(textBrailleContent.getBrailleContent());
-		brailleText.setFont(new Font(parentShell.getDisplay(), "APH_Braille_Font-6s", 18, SWT.NORMAL));
+		brailleText.addPaintListener(new ViewportHandler(true));
+		setBrailleFont(BRAILLE_FONT);
 		BrailleKeyHandler brailleKeyHandler = new BrailleKeyHandler();
 		brailleText.addKeyListener(brailleKeyHandler);
 		brailleText.addVerifyKeyListener(brailleKeyHandler);
 	}
 
+	/**
+	 * <p>
+	 * Sets the font of the braille pane, loading it first if needed.
+	 * </p>
+	 */
+	void setBrailleFont(String fontName)
+	{
+		if(!fontLoader.load(fontName))
+			return;
+		Font font = new Font(parentShell.getDisplay(), fontName, 18, SWT.NORMAL);
+		brailleText.setFont(font);
+		if(brailleFont != null)
+			brailleFont.dispose();
+		brailleFont = font;
+	}
+
+	/**
+	 * <p>
+	 * Opens <code>file</code> in the text pane.  The file is memory mapped,
+	 * so even very large files need little heap.
+	 * </p>
+	 */
+	void openFile(File file) throws IOException
+	{
+		textBrailleContent.setTextFile(file);
+	}
+
+	private class DisposeHandler implements DisposeListener
+	{
+		@Override
+		public void widgetDisposed(DisposeEvent event)
+		{
+			translationExecutor.shutdown();
+			if(brailleFont != null)
+				brailleFont.dispose();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Tells the content which lines are visible, so those are translated
+	 * first.  Any scrolling or resizing repaints, so painting is used to
+	 * catch them all.
+	 * </p>
+	 */
+	private class ViewportHandler implements PaintListener
+	{
+		private final boolean braille;
+
+		private ViewportHandler(boolean braille)
+		{
+			this.braille = braille;
+		}
+
+		@Override
+		public void paintControl(PaintEvent event)
+		{
+			StyledText styledText = braille ? brailleText : plainText;
+			int lineTop = styledText.getTopIndex();
+			int lineBottom = styledText.getLineIndex(styledText.getClientArea().height);
+			textBrailleContent.setViewport(braille, lineTop, lineBottom);
+		}
+	}
+
 	private class BrailleKeyHandler implements KeyListener, VerifyKeyListener
 	{
 		private char dotState, dotChar = 0x2800;
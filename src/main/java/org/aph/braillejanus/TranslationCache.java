@@ -0,0 +1,169 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Least recently used cache of translations in front of another
+ * {@link Translator}, keyed by table, direction and input text.  The cache
+ * is bounded by the total number of characters of the inputs and results
+ * it holds.  Safe to use from several threads; the translation itself is
+ * done outside the lock.
+ * </p>
+ */
+final class TranslationCache implements Translator
+{
+	static final int DEFAULT_MAX_WEIGHT = 0x400000;
+
+	//   approximate per entry overhead, in chars
+	private static final int ENTRY_WEIGHT = 32;
+
+	private final Translator translator;
+	private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(0x100, 0.75f, true);
+	private final long maxWeight;
+	private final AtomicLong hitCounter, missCounter;
+	private long weight;
+
+	TranslationCache()
+	{
+		this(new LibLouisTranslator());
+	}
+
+	TranslationCache(Translator translator)
+	{
+		this(translator, DEFAULT_MAX_WEIGHT);
+	}
+
+	TranslationCache(Translator translator, long maxWeight)
+	{
+		this(translator, maxWeight, Metrics.CACHE_HITS, Metrics.CACHE_MISSES);
+	}
+
+	/**
+	 * <p>
+	 * Creates a cache that counts its hits and misses in
+	 * <code>hitCounter</code> and <code>missCounter</code> instead of the
+	 * translation cache metrics.
+	 * </p>
+	 */
+	TranslationCache(Translator translator, long maxWeight, AtomicLong hitCounter, AtomicLong missCounter)
+	{
+		this.translator = translator;
+		this.maxWeight = maxWeight;
+		this.hitCounter = hitCounter;
+		this.missCounter = missCounter;
+	}
+
+	private static final class Key
+	{
+		final String table;
+		final boolean forward;
+		final String text;
+		final int hash;
+
+		Key(String table, boolean forward, String text)
+		{
+			this.table = table;
+			this.forward = forward;
+			this.text = text;
+			hash = (table.hashCode() * 31 + text.hashCode()) * 2 + (forward ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object)
+		{
+			if(!(object instanceof Key))
+				return false;
+			Key key = (Key)object;
+			return hash == key.hash && forward == key.forward && text.equals(key.text) && table.equals(key.table);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the translation of <code>text</code>, translating it with
+	 * the underlying translator if it is not cached.  Returns
+	 * <code>null</code> if the translation fails; failures are not cached.
+	 * </p>
+	 */
+	@Override
+	public String translate(String table, boolean forward, String text)
+	{
+		String result = get(table, forward, text);
+		if(result != null)
+			return result;
+
+		result = translator.translate(table, forward, text);
+		if(result == null)
+			return null;
+
+		put(table, forward, text, result);
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * Returns the cached translation of <code>text</code>, or
+	 * <code>null</code> if there is none.
+	 * </p>
+	 */
+	synchronized String get(String table, boolean forward, String text)
+	{
+		String result = entries.get(new Key(table, forward, text));
+		if(result != null)
+			hitCounter.incrementAndGet();
+		else
+			missCounter.incrementAndGet();
+		return result;
+	}
+
+	synchronized void put(String table, boolean forward, String text, String result)
+	{
+		Key key = new Key(table, forward, text);
+		String previous = entries.put(key, result);
+		if(previous != null)
+			weight -= getWeight(key, previous);
+		weight += getWeight(key, result);
+		evict();
+	}
+
+	private static long getWeight(Key key, String result)
+	{
+		return key.text.length() + result.length() + ENTRY_WEIGHT;
+	}
+
+	private void evict()
+	{
+		Iterator<Map.Entry<Key, String>> iterator = entries.entrySet().iterator();
+		while(weight > maxWeight && iterator.hasNext())
+		{
+			Map.Entry<Key, String> entry = iterator.next();
+			weight -= getWeight(entry.getKey(), entry.getValue());
+			iterator.remove();
+		}
+	}
+}
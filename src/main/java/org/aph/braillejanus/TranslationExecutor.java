@@ -0,0 +1,142 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Translates lines of a {@link TextBrailleContent} on worker threads and
+ * posts the results back to the UI thread.
+ * </p>
+ */
+final class TranslationExecutor
+{
+	private final Display display;
+	private final ExecutorService executorService;
+	private final int threadCount;
+
+	TranslationExecutor(Display display)
+	{
+		this(display, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	TranslationExecutor(Display display, int threadCount)
+	{
+		this.display = display;
+		this.threadCount = threadCount;
+		executorService = Executors.newFixedThreadPool(threadCount, new WorkerThreadFactory());
+	}
+
+	/**
+	 * <p>
+	 * Lines of one direction to translate, with the version of the content
+	 * they were taken from.
+	 * </p>
+	 */
+	static final class Job
+	{
+		final int version;
+		final boolean forward;
+		final int indexes[];
+		final String lines[];
+		final String results[];
+
+		Job(int version, boolean forward, int indexes[], String lines[])
+		{
+			this.version = version;
+			this.forward = forward;
+			this.indexes = indexes;
+			this.lines = lines;
+			results = new String[lines.length];
+		}
+	}
+
+	int getThreadCount()
+	{
+		return threadCount;
+	}
+
+	void submit(final TextBrailleContent textBrailleContent, final Job job)
+	{
+		final LineTranslator lineTranslator = textBrailleContent.getLineTranslator();
+		executorService.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				//   a line that fails is left null, and is not submitted again
+				for(int i = 0; i < job.lines.length; i++)
+					try
+					{
+						job.results[i] = lineTranslator.translateLine(job.lines[i], job.forward);
+					}
+					catch(RuntimeException exception)
+					{
+						Log.message(Log.LOG_ERROR, exception, false);
+					}
+
+				//   always post back, so the content knows the lines are done
+				post(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						textBrailleContent.applyTranslations(job);
+					}
+				});
+			}
+		});
+	}
+
+	void shutdown()
+	{
+		executorService.shutdownNow();
+	}
+
+	private void post(Runnable runnable)
+	{
+		if(display.isDisposed())
+			return;
+		try
+		{
+			display.asyncExec(runnable);
+		}
+		catch(SWTException ignored)
+		{
+			//   display was disposed after the check
+		}
+	}
+
+	private static final class WorkerThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "BrailleJanus-translation-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
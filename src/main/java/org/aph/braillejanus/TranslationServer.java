@@ -0,0 +1,544 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.aph.liblouisaph.LibLouisAPH;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Serves translations over HTTP on the loopback interface, so other tools
+ * can share one running instance and its caches.
+ * </p><p>
+ * <code>POST /forward?table=TABLE</code> and
+ * <code>POST /backward?table=TABLE</code> translate the UTF-8 request
+ * body line by line.  Requests are read and dispatched by a bounded pool
+ * of threads, then wait in a bounded queue for a fixed pool of workers,
+ * and are refused with 503 when the queue is full.  Small requests are
+ * queued separately, and the queued requests for the same table and
+ * direction are translated together with a single {@link BulkTranslator}
+ * call.  Whole responses are cached in front of the per line cache.
+ * Tables that cannot be translated with are refused with 404.
+ * </p>
+ */
+public final class TranslationServer
+{
+	static final int DEFAULT_PORT = 8035;
+	static final int DEFAULT_QUEUE_SIZE = 0x100;
+
+	//   requests with fewer chars are batched
+	private static final int SMALL_REQUEST = 0x100;
+
+	//   most small requests translated by one task
+	private static final int SMALL_BATCH = 0x40;
+
+	private static final String LINE_DELIMITER = System.getProperty("line.separator");
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final HttpServer httpServer;
+	private final ThreadPoolExecutor httpExecutor;
+	private final ThreadPoolExecutor executor;
+	private final int threadCount;
+
+	private final TranslationCache translationCache;
+	private final TranslationCache responseCache;
+	private final ConcurrentHashMap<String, LineTranslator> lineTranslators = new ConcurrentHashMap<>();
+
+	//   small requests, and the tasks translating them, at most one per worker
+	private final ArrayBlockingQueue<Request> smallRequests;
+	private final AtomicInteger smallRequestTasks = new AtomicInteger();
+
+	TranslationServer(int port, int threadCount, int queueSize) throws IOException
+	{
+		this(new LibLouisTranslator(), port, threadCount, queueSize);
+	}
+
+	TranslationServer(Translator translator, int port, int threadCount, int queueSize) throws IOException
+	{
+		this.threadCount = threadCount;
+		translationCache = new TranslationCache(translator);
+		responseCache = new TranslationCache(translator, TranslationCache.DEFAULT_MAX_WEIGHT, Metrics.RESPONSE_CACHE_HITS, Metrics.RESPONSE_CACHE_MISSES);
+
+		executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize));
+		smallRequests = new ArrayBlockingQueue<>(queueSize);
+
+		//   when full, the dispatcher thread reads the request itself, which slows accepting more
+		httpExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadPoolExecutor.CallerRunsPolicy());
+
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.setExecutor(httpExecutor);
+		httpServer.createContext("/forward", new TranslateHandler(true));
+		httpServer.createContext("/backward", new TranslateHandler(false));
+	}
+
+	public static void main(String args[])
+	{
+		int port = DEFAULT_PORT;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		int queueSize = DEFAULT_QUEUE_SIZE;
+
+		try
+		{
+			for(int i = 0; i < args.length; i++)
+				switch(args[i])
+				{
+				case "-port":     port = Integer.parseInt(args[++i]);         break;
+				case "-threads":  threadCount = Integer.parseInt(args[++i]);  break;
+				case "-queue":    queueSize = Integer.parseInt(args[++i]);    break;
+				default:          usage();                                    return;
+				}
+		}
+		catch(NumberFormatException | ArrayIndexOutOfBoundsException ignored)
+		{
+			usage();
+			return;
+		}
+		if(threadCount < 1 || queueSize < 1)
+		{
+			usage();
+			return;
+		}
+
+		try
+		{
+			LibLouisAPH.loadLibraryInternal();
+			LibLouisAPH.setInternalTablePath();
+			new TranslationServer(port, threadCount, queueSize).start();
+			Metrics.register();
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Metrics.log();
+				}
+			}));
+		}
+		catch(IOException exception)
+		{
+			Log.message(Log.LOG_FATAL, exception, false);
+			System.exit(1);
+		}
+		Log.message(Log.LOG_INFO, "Serving translations on port " + port, false);
+	}
+
+	private static void usage()
+	{
+		System.err.println("usage:  TranslationServer [-port PORT] [-threads COUNT] [-queue SIZE]");
+		System.exit(2);
+	}
+
+	void start()
+	{
+		httpServer.start();
+	}
+
+	void stop()
+	{
+		httpServer.stop(0);
+		httpExecutor.shutdown();
+		executor.shutdown();
+	}
+
+	////////////////////////////////////////
+
+	private static final class Request
+	{
+		final HttpExchange exchange;
+		final LineTranslator lineTranslator;
+		final String table;
+		final boolean forward;
+		final String text;
+
+		Request(HttpExchange exchange, LineTranslator lineTranslator, String table, boolean forward, String text)
+		{
+			this.exchange = exchange;
+			this.lineTranslator = lineTranslator;
+			this.table = table;
+			this.forward = forward;
+			this.text = text;
+		}
+	}
+
+	private final class TranslateHandler implements HttpHandler
+	{
+		private final boolean forward;
+
+		private TranslateHandler(boolean forward)
+		{
+			this.forward = forward;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			if(!exchange.getRequestMethod().equals("POST"))
+			{
+				respond(exchange, 405, "POST only");
+				return;
+			}
+
+			String table = getTable(exchange.getRequestURI().getRawQuery());
+			if(table == null)
+			{
+				respond(exchange, 400, "bad table");
+				return;
+			}
+
+			LineTranslator lineTranslator = getLineTranslator(table);
+			if(lineTranslator == null)
+			{
+				respond(exchange, 404, "unknown table");
+				return;
+			}
+
+			final Request request = new Request(exchange, lineTranslator, table, forward, readBody(exchange));
+			if(request.text.length() < SMALL_REQUEST)
+			{
+				if(!smallRequests.offer(request))
+				{
+					respond(exchange, 503, "busy");
+					return;
+				}
+				try
+				{
+					scheduleSmallRequests();
+				}
+				catch(RejectedExecutionException ignored)
+				{
+					//   unless a running task already took it, and will answer it
+					if(smallRequests.remove(request))
+						respond(exchange, 503, "busy");
+				}
+				return;
+			}
+
+			try
+			{
+				executor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						translate(request);
+					}
+				});
+			}
+			catch(RejectedExecutionException ignored)
+			{
+				respond(exchange, 503, "busy");
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns the table named in <code>query</code>, the default table if
+	 * none is named, or <code>null</code> if the name is not a plain file
+	 * name.
+	 * </p>
+	 */
+	private static String getTable(String query) throws IOException
+	{
+		if(query == null)
+			return LineTranslator.DEFAULT_TABLE;
+		for(String parameter : query.split("&"))
+			if(parameter.startsWith("table="))
+			{
+				String table = URLDecoder.decode(parameter.substring(6), "UTF-8");
+				if(!table.matches("[A-Za-z0-9][A-Za-z0-9._-]*"))
+					return null;
+				return table;
+			}
+		return LineTranslator.DEFAULT_TABLE;
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(0x400);
+		byte buffer[] = new byte[0x1000];
+		try(InputStream inputStream = exchange.getRequestBody())
+		{
+			int length;
+			while((length = inputStream.read(buffer)) > 0)
+				bytes.write(buffer, 0, length);
+		}
+		return new String(bytes.toByteArray(), UTF_8);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body)
+	{
+		try
+		{
+			byte bytes[] = body.getBytes(UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			try(OutputStream outputStream = exchange.getResponseBody())
+			{
+				outputStream.write(bytes);
+			}
+		}
+		catch(IOException exception)
+		{
+			Log.message(Log.LOG_WARNING, exception, false);
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	////////////////////////////////////////
+
+	/**
+	 * <p>
+	 * Returns the line translator for <code>table</code>, or
+	 * <code>null</code> if the table cannot be translated with.
+	 * </p>
+	 */
+	private LineTranslator getLineTranslator(String table)
+	{
+		LineTranslator lineTranslator = lineTranslators.get(table);
+		if(lineTranslator != null)
+			return lineTranslator;
+
+		//   translating with an unknown table fails, and failures are not cached
+		if(translationCache.translate(table, true, "a") == null)
+			return null;
+		lineTranslators.putIfAbsent(table, new LineTranslator(table, translationCache));
+		return lineTranslators.get(table);
+	}
+
+	/**
+	 * <p>
+	 * Starts a task draining the small requests, unless
+	 * <code>threadCount</code> are already running.
+	 * </p>
+	 */
+	private void scheduleSmallRequests()
+	{
+		int tasks;
+		do
+		{
+			tasks = smallRequestTasks.get();
+			if(tasks >= threadCount)
+				return;
+		}
+		while(!smallRequestTasks.compareAndSet(tasks, tasks + 1));
+
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					translateSmallRequests();
+				}
+			});
+		}
+		catch(RejectedExecutionException exception)
+		{
+			smallRequestTasks.decrementAndGet();
+			throw exception;
+		}
+	}
+
+	private void translateSmallRequests()
+	{
+		ArrayList<Request> batch = new ArrayList<>(SMALL_BATCH);
+		smallRequests.drainTo(batch, SMALL_BATCH);
+
+		try
+		{
+			//   another worker can take the next batch while this one is translated
+			scheduleMoreSmallRequests();
+			while(!batch.isEmpty())
+				translateBatch(batch);
+		}
+		catch(RuntimeException exception)
+		{
+			Log.message(Log.LOG_ERROR, exception, false);
+			for(Request request : batch)
+				respond(request.exchange, 500, "translation failed");
+		}
+		finally
+		{
+			smallRequestTasks.decrementAndGet();
+		}
+		scheduleMoreSmallRequests();
+	}
+
+	private void scheduleMoreSmallRequests()
+	{
+		if(!smallRequests.isEmpty())
+			try
+			{
+				scheduleSmallRequests();
+			}
+			catch(RejectedExecutionException ignored)
+			{
+				//   next small request will schedule again
+			}
+	}
+
+	/**
+	 * <p>
+	 * Removes the requests with the same table and direction as the first
+	 * request in <code>batch</code>, and translates the ones whose response
+	 * is not cached with a single call.  Every line is given a line
+	 * delimiter, so the result splits back into the responses.  If it does
+	 * not, or anything else fails, the requests not yet answered are
+	 * answered with 500.
+	 * </p>
+	 */
+	private void translateBatch(ArrayList<Request> batch)
+	{
+		Request first = batch.get(0);
+		ArrayList<Request> requests = new ArrayList<>(batch.size());
+		ArrayList<String> lines = new ArrayList<>();
+		int lineCounts[] = new int[batch.size()];
+		for(Iterator<Request> iterator = batch.iterator(); iterator.hasNext();)
+		{
+			Request request = iterator.next();
+			if(request.lineTranslator != first.lineTranslator || request.forward != first.forward)
+				continue;
+			iterator.remove();
+
+			String result = responseCache.get(request.table, request.forward, request.text);
+			if(result != null)
+			{
+				respond(request.exchange, 200, result);
+				continue;
+			}
+
+			int lineCount = lines.size();
+			splitLines(request.text, lines);
+			if(lines.size() > lineCount && !lines.get(lines.size() - 1).endsWith(LINE_DELIMITER))
+				lines.set(lines.size() - 1, lines.get(lines.size() - 1) + LINE_DELIMITER);
+			lineCounts[requests.size()] = lines.size() - lineCount;
+			requests.add(request);
+		}
+		if(requests.isEmpty())
+			return;
+
+		int answered = 0;
+		try
+		{
+			String result = BulkTranslator.translate(first.lineTranslator, lines.toArray(new String[lines.size()]), first.forward);
+
+			String responses[] = new String[requests.size()];
+			int start = 0;
+			for(int i = 0; i < responses.length; i++)
+			{
+				int end = start;
+				for(int j = 0; j < lineCounts[i]; j++)
+				{
+					end = result.indexOf(LINE_DELIMITER, end);
+					if(end < 0)
+						throw new IllegalStateException("translation has fewer lines than the batch");
+					end += LINE_DELIMITER.length();
+				}
+				responses[i] = result.substring(start, end);
+				start = end;
+
+				//   the line delimiter added to the last line
+				if(lineCounts[i] > 0 && !requests.get(i).text.endsWith("\n"))
+					responses[i] = responses[i].substring(0, responses[i].length() - LINE_DELIMITER.length());
+			}
+
+			for(; answered < responses.length; answered++)
+			{
+				Request request = requests.get(answered);
+				responseCache.put(request.table, request.forward, request.text, responses[answered]);
+				respond(request.exchange, 200, responses[answered]);
+			}
+		}
+		catch(RuntimeException exception)
+		{
+			Log.message(Log.LOG_ERROR, exception, false);
+			for(; answered < requests.size(); answered++)
+				respond(requests.get(answered).exchange, 500, "translation failed");
+		}
+	}
+
+	private void translate(Request request)
+	{
+		try
+		{
+			String result = responseCache.get(request.table, request.forward, request.text);
+			if(result == null)
+			{
+				ArrayList<String> lines = new ArrayList<>();
+				splitLines(request.text, lines);
+				result = BulkTranslator.translate(request.lineTranslator, lines.toArray(new String[lines.size()]), request.forward);
+				responseCache.put(request.table, request.forward, request.text, result);
+			}
+			respond(request.exchange, 200, result);
+		}
+		catch(RuntimeException exception)
+		{
+			Log.message(Log.LOG_ERROR, exception, false);
+			respond(request.exchange, 500, "translation failed");
+		}
+	}
+
+	/**
+	 * <p>
+	 * Adds the lines of <code>text</code> to <code>lines</code>, each ending
+	 * with the line delimiter the translator expects, except the last if
+	 * <code>text</code> does not end with a line break.
+	 * </p>
+	 */
+	private static void splitLines(String text, ArrayList<String> lines)
+	{
+		int start = 0;
+		while(start < text.length())
+		{
+			int end = text.indexOf('\n', start);
+			if(end < 0)
+			{
+				lines.add(text.substring(start));
+				break;
+			}
+			int finish = end;
+			if(finish > start && text.charAt(finish - 1) == '\r')
+				finish--;
+			lines.add(text.substring(start, finish) + LINE_DELIMITER);
+			start = end + 1;
+		}
+	}
+}
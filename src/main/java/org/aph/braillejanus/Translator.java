@@ -0,0 +1,36 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+/**
+ * <p>
+ * Translates text with a named table.  The default implementation is
+ * {@link LibLouisTranslator}; others can be passed to
+ * {@link TextBrailleContent} to run without the native library.
+ * Implementations must be safe to use from several threads.
+ * </p>
+ */
+public interface Translator
+{
+	/**
+	 * <p>
+	 * Returns the translation of <code>text</code>, forward from print to
+	 * braille or backward from braille to print, or <code>null</code> if
+	 * the translation fails.
+	 * </p>
+	 */
+	String translate(String table, boolean forward, String text);
+}
@@ -0,0 +1,175 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Forward translates a line by splitting it into segments at spaces that
+ * no table rule can cross, translating each segment through the
+ * {@link TranslationCache}, and joining the results.  After a change to
+ * one word of a long line, only the segment containing that word is
+ * translated again.
+ * </p><p>
+ * A space is only used as a boundary between two plain words, being
+ * letters with optional inner apostrophes or hyphens, an optional leading
+ * capital, and optional trailing punctuation.  Words that some codes join
+ * to their neighbors are kept with them.  Lines containing anything else,
+ * such as digits or words in all capitals, which can start indicators
+ * that span words, are not split.
+ * </p>
+ */
+final class WordTranslator
+{
+	//   shorter lines are translated whole
+	static final int MIN_LENGTH = 40;
+
+	private static final String PROBE_WORD = "zz";
+
+	private static final Set<String> JOINED_WORDS = new HashSet<>(Arrays.asList("a", "and", "by", "for", "into", "of", "the", "to", "with"));
+
+	private final TranslationCache translationCache;
+
+	//   translation of a space between words, per table, empty if unknown
+	private final ConcurrentHashMap<String, String> spaces = new ConcurrentHashMap<>();
+
+	WordTranslator(TranslationCache translationCache)
+	{
+		this.translationCache = translationCache;
+	}
+
+	/**
+	 * <p>
+	 * Returns the forward translation of <code>line</code>, which must not
+	 * contain a line delimiter, or <code>null</code> if the line cannot be
+	 * split and must be translated whole.
+	 * </p>
+	 */
+	String translate(String table, String line)
+	{
+		if(line.length() < MIN_LENGTH)
+			return null;
+
+		List<String> segments = split(line);
+		if(segments == null || segments.size() < 2)
+			return null;
+
+		String space = getSpace(table);
+		if(space.isEmpty())
+			return null;
+
+		StringBuilder braille = new StringBuilder(line.length() * 2);
+		for(String segment : segments)
+		{
+			String result = translationCache.translate(table, true, segment);
+			if(result == null)
+				return null;
+			if(braille.length() > 0)
+				braille.append(space);
+			braille.append(result);
+		}
+		return braille.toString();
+	}
+
+	/**
+	 * <p>
+	 * Returns the segments of <code>line</code>, or <code>null</code> if it
+	 * cannot be split safely.
+	 * </p>
+	 */
+	static List<String> split(String line)
+	{
+		String words[] = line.split(" ", -1);
+		for(String word : words)
+			if(!isPlainWord(word))
+				return null;
+
+		ArrayList<String> segments = new ArrayList<>(words.length);
+		StringBuilder segment = new StringBuilder(words[0]);
+		for(int i = 1; i < words.length; i++)
+		{
+			if(isJoined(words[i - 1]) || isJoined(words[i]))
+				segment.append(' ');
+			else
+			{
+				segments.add(segment.toString());
+				segment.setLength(0);
+			}
+			segment.append(words[i]);
+		}
+		segments.add(segment.toString());
+		return segments;
+	}
+
+	private static boolean isPlainWord(String word)
+	{
+		int end = word.length();
+		while(end > 0 && ",.;:!?".indexOf(word.charAt(end - 1)) >= 0)
+			end--;
+		if(end == 0)
+			return false;
+
+		for(int i = 0; i < end; i++)
+		{
+			char c = word.charAt(i);
+			if(c >= 'a' && c <= 'z')
+				continue;
+			if(c >= 'A' && c <= 'Z' && i == 0)
+				continue;
+			if((c == '\'' || c == '-') && i > 0 && i < end - 1)
+				continue;
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean isJoined(String word)
+	{
+		int end = word.length();
+		while(end > 0 && !Character.isLetter(word.charAt(end - 1)))
+			end--;
+		return JOINED_WORDS.contains(word.substring(0, end).toLowerCase());
+	}
+
+	/**
+	 * <p>
+	 * Finds how <code>table</code> translates a space between two words, by
+	 * comparing the translation of two words with that of one.
+	 * </p>
+	 */
+	private String getSpace(String table)
+	{
+		String space = spaces.get(table);
+		if(space != null)
+			return space;
+
+		space = "";
+		String word = translationCache.translate(table, true, PROBE_WORD);
+		String words = translationCache.translate(table, true, PROBE_WORD + ' ' + PROBE_WORD);
+		if(word != null && words != null && words.length() > word.length() * 2 && words.startsWith(word) && words.endsWith(word))
+			space = words.substring(word.length(), words.length() - word.length());
+		else
+			Log.message(Log.LOG_WARNING, "Unable to split lines into words for " + table, false);
+		spaces.put(table, space);
+		return space;
+	}
+}
@@ -0,0 +1,194 @@
+/* Copyright (C) 2017 American Printing House for the Blind Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.aph.braillejanus;
+
+import org.eclipse.swt.custom.StyledTextContent;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * <p>
+ * Takes {@link TextBrailleSnapshot}s on other threads while the test
+ * thread edits a {@link TextBrailleContent}, as the UI thread does, and
+ * checks that every snapshot has both panes of the same edit.
+ * </p>
+ */
+public class TextBrailleContentConcurrencyTest
+{
+	private static final String LINE_DELIMITER = System.getProperty("line.separator");
+
+	private static final int LINE_COUNT = 1000;
+	private static final int EDIT_COUNT = 20000;
+	private static final int READER_COUNT = 3;
+
+	@Test(timeout = 120000)
+	public void snapshotsMatchWhileEditing() throws InterruptedException
+	{
+		final TextBrailleContent textBrailleContent = new TextBrailleContent(new FakeTranslator());
+		StyledTextContent content = textBrailleContent.getTextContent();
+		content.setText(newText(LINE_COUNT));
+
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> failure = new AtomicReference<>();
+		Thread readers[] = new Thread[READER_COUNT];
+		for(int i = 0; i < readers.length; i++)
+		{
+			readers[i] = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					long version = -1;
+					while(!done.get() && failure.get() == null)
+					{
+						TextBrailleSnapshot snapshot = textBrailleContent.snapshot();
+						String error = check(snapshot, version);
+						if(error != null)
+							failure.compareAndSet(null, error);
+						version = snapshot.getVersion();
+					}
+				}
+			}, "snapshot reader " + i);
+			readers[i].start();
+		}
+
+		Random random = new Random(0x5eed);
+		try
+		{
+			for(int i = 0; i < EDIT_COUNT && failure.get() == null; i++)
+				edit(textBrailleContent, content, random);
+		}
+		finally
+		{
+			done.set(true);
+			for(Thread reader : readers)
+				reader.join();
+		}
+
+		assertNull(failure.get());
+	}
+
+	@Test
+	public void snapshotOmitsUncommittedEdit()
+	{
+		TextBrailleContent textBrailleContent = new TextBrailleContent(new FakeTranslator());
+		StyledTextContent content = textBrailleContent.getTextContent();
+		content.setText(newText(3));
+		TextBrailleSnapshot before = textBrailleContent.snapshot();
+
+		textBrailleContent.beginEdit();
+		content.replaceTextRange(0, 0, "first" + LINE_DELIMITER);
+		content.replaceTextRange(content.getCharCount(), 0, LINE_DELIMITER + "last");
+		TextBrailleSnapshot during = textBrailleContent.snapshot();
+		assertEquals(before.getVersion(), during.getVersion());
+		assertEquals(before.getTextRange(0, before.getTextCharCount()), during.getTextRange(0, during.getTextCharCount()));
+
+		textBrailleContent.commitEdit();
+		TextBrailleSnapshot after = textBrailleContent.snapshot();
+		assertEquals(before.getVersion() + 1, after.getVersion());
+		assertEquals(5, after.getTextLineCount());
+		assertEquals(5, after.getBrailleLineCount());
+		assertEquals("last", after.getTextLine(4));
+	}
+
+	////////////////////////////////////////
+
+	private static String newText(int lineCount)
+	{
+		StringBuilder text = new StringBuilder();
+		for(int i = 0; i < lineCount; i++)
+		{
+			if(i > 0)
+				text.append(LINE_DELIMITER);
+			text.append("line ").append((char)('a' + i % 26)).append(" of the text");
+		}
+		return text.toString();
+	}
+
+	/**
+	 * <p>
+	 * Types, pastes or deletes lines, or makes two replacements in one
+	 * batched edit, at a random place.
+	 * </p>
+	 */
+	private static void edit(TextBrailleContent textBrailleContent, StyledTextContent content, Random random)
+	{
+		int lineIndex = random.nextInt(content.getLineCount());
+		int offset = content.getOffsetAtLine(lineIndex) + random.nextInt(content.getLine(lineIndex).length() + 1);
+		String paste = "pasted" + LINE_DELIMITER + "lines" + LINE_DELIMITER;
+		switch(random.nextInt(4))
+		{
+		case 0:
+
+			content.replaceTextRange(offset, 0, "x");
+			content.replaceTextRange(offset, 1, "");
+			break;
+
+		case 1:
+
+			content.replaceTextRange(offset, 0, paste);
+			content.replaceTextRange(offset, paste.length(), "");
+			break;
+
+		case 2:
+
+			textBrailleContent.beginEdit();
+			content.replaceTextRange(offset, 0, "new" + LINE_DELIMITER);
+			content.replaceTextRange(content.getOffsetAtLine(random.nextInt(content.getLineCount())), 0, "y");
+			textBrailleContent.commitEdit();
+			break;
+
+		default:
+
+			//   keep the line count near the start
+			if(content.getLineCount() > LINE_COUNT)
+			{
+				int start = content.getOffsetAtLine(lineIndex);
+				content.replaceTextRange(start, content.getOffsetAtLine(lineIndex + 1) - start, "");
+			}
+			break;
+		}
+	}
+
+	/**
+	 * <p>
+	 * Returns what is wrong with <code>snapshot</code>, taken after one with
+	 * <code>version</code>, or <code>null</code>.
+	 * </p>
+	 */
+	private static String check(TextBrailleSnapshot snapshot, long version)
+	{
+		if(snapshot.getVersion() < version)
+			return "version " + snapshot.getVersion() + " after " + version;
+
+		int lineCount = snapshot.getTextLineCount();
+		if(lineCount != snapshot.getBrailleLineCount())
+			return "version " + snapshot.getVersion() + " has " + lineCount + " text lines but " + snapshot.getBrailleLineCount() + " braille lines";
+
+		int last = lineCount - 1;
+		if(snapshot.getTextOffsetAtLine(last) + snapshot.getTextLine(last).length() != snapshot.getTextCharCount())
+			return "version " + snapshot.getVersion() + " text lines do not add up to " + snapshot.getTextCharCount() + " chars";
+		if(snapshot.getBrailleOffsetAtLine(last) + snapshot.getBrailleLine(last).length() != snapshot.getBrailleCharCount())
+			return "version " + snapshot.getVersion() + " braille lines do not add up to " + snapshot.getBrailleCharCount() + " chars";
+		return null;
+	}
+}